@@ -0,0 +1,62 @@
+package com.bonyansystem.processors.asn1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Filling and building the rows of one top level record with heavy * iteration: master cells,
+ * iterated columns, an explicit sequence column and the REC_NO/SUB_SEQ/MULTI_RECORD columns.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BuildRecordsBenchmark {
+    private static final int MASTER_COLUMNS = 3;
+    private static final int ITERATED_COLUMNS = 4;
+
+    @Param({"10", "100", "1000"})
+    public int iterations;
+
+    private ASN1RecordSet recordSet;
+    private int[] masterColumns;
+    private int[] iteratedColumns;
+    private byte[][] values;
+
+    @Setup
+    public void setup() throws Exception {
+        ASN1Schema schema = new ASN1Schema(
+                "REC_NO,SUB_SEQ,MULTI_RECORD,79.1,79.2,79.3,79.30.*.1,79.30.*.2,79.30.*.3,79.30.*.4,79.31.*[0].1",
+                "INTEGER,INTEGER,INTEGER,TBCD_STRING,INTEGER,OCTET_STRING,INTEGER,TBCD_STRING,INTEGER,IP_STRING,INTEGER");
+        recordSet = new ASN1RecordSet(schema);
+        masterColumns = new int[]{schema.getHeaderNum("79.1"), schema.getHeaderNum("79.2"), schema.getHeaderNum("79.3")};
+        iteratedColumns = new int[]{schema.getHeaderNum("79.30.*.1"), schema.getHeaderNum("79.30.*.2"),
+                schema.getHeaderNum("79.30.*.3"), schema.getHeaderNum("79.30.*.4"), schema.getHeaderNum("79.31.*.1")};
+        values = new byte[][]{{0x21, 0x43, 0x65, (byte) 0xF7}, {0x01, 0x02}, {0x0A, 0x0B, 0x0C}, {10, 0, 0, 1}};
+    }
+
+    @Benchmark
+    public int buildRecords() throws Exception {
+        recordSet.purge();
+        for (int i = 0; i < MASTER_COLUMNS; i++)
+            recordSet.populateCell(masterColumns[i], false, values[i]);
+        for (int row = 0; row < iterations; row++)
+            for (int i = 0; i < ITERATED_COLUMNS; i++)
+                recordSet.populateCell(iteratedColumns[i], true, values[i]);
+        recordSet.populateCell(iteratedColumns[ITERATED_COLUMNS], true, values[1]);
+        return recordSet.buildRecords(0);
+    }
+}
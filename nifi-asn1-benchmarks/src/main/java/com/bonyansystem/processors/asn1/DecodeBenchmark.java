@@ -0,0 +1,74 @@
+package com.bonyansystem.processors.asn1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Text encoding of one cell per DataType, into the output buffer and as a String.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodeBenchmark {
+    @Param({"TBCD_STRING", "OCTET_STRING", "IA5_STRING", "IP_STRING", "INTEGER", "BOOLEAN", "IPV6_STRING"})
+    public DataType dataType;
+
+    private byte[] value;
+    private ByteSink sink;
+    private ASN1RecordSet recordSet;
+
+    @Setup
+    public void setup() throws Exception {
+        Random random = new Random(42);
+        switch (dataType) {
+            case IA5_STRING:
+                value = "subscriber@operator.net".getBytes();
+                break;
+            case IP_STRING:
+                value = new byte[4];
+                break;
+            case INTEGER:
+                value = new byte[4];
+                break;
+            case BOOLEAN:
+                value = new byte[]{(byte) 0xFF};
+                break;
+            case IPV6_STRING:
+                value = new byte[16];
+                break;
+            default:
+                value = new byte[8];
+        }
+        if (dataType != DataType.IA5_STRING && dataType != DataType.BOOLEAN)
+            random.nextBytes(value);
+        sink = new ByteSink(256);
+        recordSet = new ASN1RecordSet("79.1", dataType.name());
+    }
+
+    @Benchmark
+    public int encode() throws Exception {
+        sink.reset();
+        dataType.getCodec().encode(value, 0, value.length, sink);
+        return sink.size();
+    }
+
+    @Benchmark
+    public String decodeData() throws Exception {
+        return recordSet.decodeData(value, dataType);
+    }
+}
@@ -0,0 +1,18 @@
+package com.bonyansystem.processors.asn1;
+
+import java.io.OutputStream;
+
+/*
+ * Discards the CSV output so the benchmarks measure decoding only.
+ */
+final class NullOutputStream extends OutputStream {
+    static final NullOutputStream INSTANCE = new NullOutputStream();
+
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+}
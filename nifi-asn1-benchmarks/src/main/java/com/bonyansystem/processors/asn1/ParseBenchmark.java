@@ -0,0 +1,87 @@
+package com.bonyansystem.processors.asn1;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * End to end decode of a synthetic CDR file to CSV, and the BER walk alone without building
+ * or writing rows. The records and bytes counters are reported per second next to the score.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+    @Param({"2", "6"})
+    public int depth;
+
+    @Param({"4", "16"})
+    public int width;
+
+    @Param({"1", "20"})
+    public int iterations;
+
+    private SyntheticCDR cdr;
+    private ASN1Schema schema;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Throughput {
+        public long records;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            records = 0;
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        cdr = SyntheticCDR.generate(2000, depth, width, iterations, 42);
+        schema = new ASN1Schema(cdr.getSchema(), cdr.getDataTypes());
+    }
+
+    @Benchmark
+    public int parse(Throughput throughput) throws Exception {
+        byte[] data = cdr.getData();
+        ASN1CSVParser parser = new ASN1CSVParser(new ByteArrayBERReader(data, 0, data.length), schema);
+        int records = parser.parseRecords(NullOutputStream.INSTANCE);
+        throughput.records += records;
+        throughput.bytes += data.length;
+        return records;
+    }
+
+    @Benchmark
+    public int walk(Throughput throughput) throws Exception {
+        byte[] data = cdr.getData();
+        BERReader reader = new ByteArrayBERReader(data, 0, data.length);
+        ASN1CSVParser parser = new ASN1CSVParser(reader, schema);
+        ASN1SchemaNode root = schema.getRoot();
+        int records = 0;
+        while (reader.hasRemaining()) {
+            parser.digIn(root);
+            parser.getRecordSet().purge();
+            records++;
+        }
+        throughput.records += records;
+        throughput.bytes += data.length;
+        return records;
+    }
+}
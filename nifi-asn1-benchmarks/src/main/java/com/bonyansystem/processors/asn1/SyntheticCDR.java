@@ -0,0 +1,158 @@
+package com.bonyansystem.processors.asn1;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+/*
+ * Deterministic synthetic CDR file for the benchmarks. Every record is [79] holding `depth`
+ * nested containers with `width` mapped primitives each plus one primitive no column refers to,
+ * and a [30] list of `iterations` SEQUENCE entries. The same seed always gives the same bytes.
+ */
+public final class SyntheticCDR {
+    private static final DataType[] TYPES = {DataType.TBCD_STRING, DataType.INTEGER, DataType.OCTET_STRING,
+            DataType.IA5_STRING, DataType.IP_STRING, DataType.BOOLEAN, DataType.IPV6_STRING};
+
+    private final byte[] data;
+    private final String schema;
+    private final String dataTypes;
+    private final int records;
+
+    private SyntheticCDR(byte[] data, String schema, String dataTypes, int records) {
+        this.data = data;
+        this.schema = schema;
+        this.dataTypes = dataTypes;
+        this.records = records;
+    }
+
+    public static SyntheticCDR generate(int records, int depth, int width, int iterations, long seed) {
+        Random random = new Random(seed);
+        StringBuilder schema = new StringBuilder("REC_NO,SUB_SEQ");
+        StringBuilder dataTypes = new StringBuilder("INTEGER,INTEGER");
+        String path = "79";
+        for (int level = 0; level < depth; level++) {
+            path += "." + 1;
+            for (int i = 0; i < width; i++) {
+                schema.append(',').append(path).append('.').append(i + 2);
+                dataTypes.append(',').append(typeOf(level, i));
+            }
+        }
+        schema.append(",79.30.*.1,79.30.*.2");
+        dataTypes.append(",INTEGER,TBCD_STRING");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int r = 0; r < records; r++) {
+            byte[] record = tlv(0xA0, 79, level(random, 0, depth, width), list(random, iterations));
+            out.write(record, 0, record.length);
+        }
+        return new SyntheticCDR(out.toByteArray(), schema.toString(), dataTypes.toString(), records);
+    }
+
+    private static DataType typeOf(int level, int i) {
+        return TYPES[(level + i) % TYPES.length];
+    }
+
+    private static byte[] level(Random random, int level, int depth, int width) {
+        if (level == depth)
+            return new byte[0];
+        byte[][] contents = new byte[width + 2][];
+        for (int i = 0; i < width; i++)
+            contents[i] = tlv(0x80, i + 2, value(random, typeOf(level, i)));
+        contents[width] = tlv(0x80, width + 2, value(random, DataType.OCTET_STRING));
+        contents[width + 1] = level(random, level + 1, depth, width);
+        return tlv(0xA0, 1, contents);
+    }
+
+    private static byte[] list(Random random, int iterations) {
+        byte[][] entries = new byte[iterations][];
+        for (int i = 0; i < iterations; i++)
+            entries[i] = tlv(0x20, 16, tlv(0x80, 1, value(random, DataType.INTEGER)),
+                    tlv(0x80, 2, value(random, DataType.TBCD_STRING)));
+        return tlv(0xA0, 30, entries);
+    }
+
+    private static byte[] value(Random random, DataType type) {
+        byte[] value;
+        switch (type) {
+            case TBCD_STRING:
+                value = new byte[8]; // IMSI sized, filler in the last high nibble
+                for (int i = 0; i < value.length; i++)
+                    value[i] = (byte) (random.nextInt(10) << 4 | random.nextInt(10));
+                value[7] |= (byte) 0xF0;
+                return value;
+            case INTEGER:
+                value = new byte[1 + random.nextInt(4)];
+                break;
+            case IA5_STRING:
+                value = new byte[12];
+                for (int i = 0; i < value.length; i++)
+                    value[i] = (byte) ('a' + random.nextInt(26));
+                return value;
+            case IP_STRING:
+                value = new byte[4];
+                break;
+            case BOOLEAN:
+                value = new byte[1];
+                break;
+            case IPV6_STRING:
+                value = new byte[16];
+                break;
+            default:
+                value = new byte[6];
+        }
+        random.nextBytes(value);
+        return value;
+    }
+
+    /*
+     * TLV with a context class or universal identifier, tagNo and definite length.
+     */
+    static byte[] tlv(int identifier, int tagNo, byte[]... contents) {
+        int length = 0;
+        for (byte[] c : contents)
+            length += c.length;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 8);
+        if (tagNo < 31) {
+            out.write(identifier | tagNo);
+        } else {
+            out.write(identifier | 0x1F);
+            if (tagNo >= 128)
+                out.write(0x80 | (tagNo >> 7));
+            out.write(tagNo & 0x7F);
+        }
+        if (length < 128) {
+            out.write(length);
+        } else if (length < 256) {
+            out.write(0x81);
+            out.write(length);
+        } else if (length < 65536) {
+            out.write(0x82);
+            out.write(length >> 8);
+            out.write(length & 0xFF);
+        } else {
+            out.write(0x83);
+            out.write(length >> 16);
+            out.write((length >> 8) & 0xFF);
+            out.write(length & 0xFF);
+        }
+        for (byte[] c : contents)
+            out.write(c, 0, c.length);
+        return out.toByteArray();
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public String getSchema() {
+        return schema;
+    }
+
+    public String getDataTypes() {
+        return dataTypes;
+    }
+
+    public int getRecords() {
+        return records;
+    }
+}
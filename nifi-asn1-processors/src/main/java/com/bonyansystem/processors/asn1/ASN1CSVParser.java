@@ -1,47 +1,286 @@
 package com.bonyansystem.processors.asn1;
 
+import org.apache.nifi.logging.ComponentLog;
+
 import java.io.*;
-import java.util.logging.Logger;
-
-public class ASN1CSVParser implements BERTags {
-    static Logger logger = Logger.getLogger("com.bonyansystem");
-    private final BufferedInputStream inputStream;
-    private final String schema;
-    private final String schemaDataTypes;
-    private ASN1RecordSet recordSet;
+import java.util.Arrays;
+
+public class ASN1CSVParser implements BERTags, Closeable {
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    static final int END_OF_CONTENTS = -1;
+    private BERReader reader;
+    private final ASN1RecordSet[] recordSets;
+    private final ASN1SchemaNode root;
+    private final ComponentLog logger;
     private int level;
-    private int pos = 1;
-    private String lastSequenceAddress = "";
-    private int recordSeq = 0;
+    private final int[] recordCounts;
+    private final ASN1ParseMetrics metrics = new ASN1ParseMetrics();
+    private byte[] value = new byte[256]; //value read once for several tables
+    private ASN1InvalidRecordListener invalidRecordListener; //null fails on the first invalid record
+    private ByteSink[] staging; //rows of one record per table in lenient mode
+    private long recordOffset;
+    private long recordEnd; //end of the current top level record, -1 when not known
+    private boolean filtered;
+    private boolean skipRest; //every table rejected the current record
 
-    public ASN1CSVParser(BufferedInputStream bufferedInputStream,
+    public ASN1CSVParser(InputStream inputStream,
                          String schema, String schemaDataTypes) throws Exception {
-        this.inputStream = bufferedInputStream;
-        this.schema = schema;
-        this.schemaDataTypes = schemaDataTypes;
+        this(new StreamBERReader(inputStream, DEFAULT_BUFFER_SIZE), schema, schemaDataTypes);
+    }
 
-        recordSet = new ASN1RecordSet(schema, schemaDataTypes);
+    public ASN1CSVParser(BERReader reader,
+                         String schema, String schemaDataTypes) throws Exception {
+        this(reader, new ASN1Schema(schema, schemaDataTypes));
     }
 
-    public int parse(BufferedOutputStream bufferedOutputStream) throws Exception {
-        int recordCount = 0;
-        while (inputStream.available() > 0) {
-            digIn("", 0, false);
+    public ASN1CSVParser(BERReader reader, ASN1Schema schema) {
+        this(reader, schema, JulComponentLog.DEFAULT);
+    }
 
-            recordCount += recordSet.buildRecords(recordCount);
-            recordSet.writeRecords(bufferedOutputStream);
-            recordSet.purge();
-        }
-        logger.info("Parse completed.");
+    public ASN1CSVParser(BERReader reader, ASN1Schema schema, ComponentLog logger) {
+        this(reader, schema.getRoot(), new ASN1RecordSet[]{new ASN1RecordSet(schema, logger)}, logger);
+    }
+
+    /*
+     * Parser filling a record set per table of the schema set in one walk.
+     */
+    public ASN1CSVParser(BERReader reader, ASN1SchemaSet schemas, ComponentLog logger) {
+        this(reader, schemas.getRoot(), new ASN1RecordSet[schemas.getTableCount()], logger);
+        for (int table = 0; table < recordSets.length; table++)
+            recordSets[table] = new ASN1RecordSet(schemas.getSchema(table), logger);
+    }
+
+    private ASN1CSVParser(BERReader reader, ASN1SchemaNode root, ASN1RecordSet[] recordSets, ComponentLog logger) {
+        this.reader = reader;
+        this.root = root;
+        this.recordSets = recordSets;
+        this.recordCounts = new int[recordSets.length];
+        this.logger = logger;
+    }
+
+    /*
+     * Prepares the parser for another input, keeping the compiled schema and the row buffers.
+     */
+    void reset(BERReader reader) {
+        this.reader = reader;
+        level = 0;
+        Arrays.fill(recordCounts, 0);
+        for (ASN1RecordSet recordSet : recordSets)
+            recordSet.reset();
+        metrics.reset();
+    }
+
+    public ASN1ParseMetrics getMetrics() {
+        return metrics;
+    }
+
+    ASN1RecordSet getRecordSet() {
+        return recordSets[0];
+    }
+
+    ASN1RecordSet getRecordSet(int table) {
+        return recordSets[table];
+    }
+
+    /*
+     * Rows written for a table since the last reset.
+     */
+    public int getRecordCount(int table) {
+        return recordCounts[table];
+    }
+
+    /*
+     * Writes every table in the binary row format of ASN1RecordSet instead of CSV text.
+     */
+    public void setBinaryOutput(boolean binary) {
+        for (ASN1RecordSet recordSet : recordSets)
+            recordSet.setBinaryOutput(binary);
+    }
+
+    /*
+     * Lenient mode: a top level record that fails to decode is skipped using its length, reported
+     * to the listener and parsing goes on with the next one. A record cut off by the end of input
+     * is reported with the bytes that are left and ends the parse. Records of indefinite length
+     * cannot be skipped and still fail the parse. null turns lenient mode off.
+     */
+    public void setInvalidRecordListener(ASN1InvalidRecordListener listener) {
+        this.invalidRecordListener = listener;
+    }
+
+    /*
+     * Keeps only the rows of table 0 passing filter. Once a master value fails it, the rest of
+     * the record is skipped without being walked. null removes the filter. Rows cannot be
+     * spilled at the same time, see setSpillThreshold.
+     */
+    public void setFilter(ASN1Filter filter) {
+        recordSets[0].setFilter(filter);
+        filtered = filter != null && recordSets.length == 1;
+    }
+
+    public void setSpillThreshold(int rows) {
+        for (ASN1RecordSet recordSet : recordSets)
+            recordSet.setSpillThreshold(rows);
+    }
+
+    /*
+     * Deletes the spill files of the record sets, the reader is left to the caller.
+     */
+    @Override
+    public void close() throws IOException {
+        for (ASN1RecordSet recordSet : recordSets)
+            recordSet.close();
+    }
+
+    public int parse(OutputStream bufferedOutputStream) throws Exception {
+        return parse(new OutputStream[]{bufferedOutputStream});
+    }
+
+    /*
+     * Writes the rows of each table to its own output, returns the rows of table 0.
+     */
+    public int parse(OutputStream[] outputStreams) throws Exception {
+        int recordCount = parseRecords(outputStreams);
+        if (logger.isDebugEnabled())
+            logger.debug("Parse completed. " + metrics);
         return recordCount;
     }
 
-    int digIn(String parentAddress, int parentSequence, boolean isIterationTag) throws Exception {
-        int tag = inputStream.read();
-        pos++;
-        int tagNo = readTagNumber(tag);
-        int length = readLength(inputStream, 99999, true);
-        String currentAddress = parentAddress + (parentAddress.length()==0?"":".") + tagNo;
+    int parseRecords(OutputStream bufferedOutputStream) throws Exception {
+        return parseRecords(new OutputStream[]{bufferedOutputStream});
+    }
+
+    private int parseRecords(OutputStream[] outputStreams) throws Exception {
+        if (outputStreams.length != recordSets.length)
+            throw new IllegalArgumentException("Expected " + recordSets.length + " outputs, got " + outputStreams.length);
+        if (invalidRecordListener != null)
+            return parseRecordsLeniently(outputStreams);
+        while (nextRecord()) {
+            long start = System.nanoTime();
+            for (int table = 0; table < recordSets.length; table++)
+                recordSets[table].writeRecords(outputStreams[table]);
+            metrics.addWriteNanos(System.nanoTime() - start);
+        }
+        long start = System.nanoTime();
+        for (ASN1RecordSet recordSet : recordSets) {
+            recordSet.flush();
+            recordSet.addCacheCounts(metrics);
+        }
+        metrics.addWriteNanos(System.nanoTime() - start);
+        return recordCounts[0];
+    }
+
+    /*
+     * Rows of a record are staged per table and only written once every table encoded them, so a
+     * record failing on write leaves nothing behind either.
+     */
+    private int parseRecordsLeniently(OutputStream[] outputStreams) throws Exception {
+        if (staging == null) {
+            staging = new ByteSink[recordSets.length];
+            for (int table = 0; table < staging.length; table++)
+                staging[table] = new ByteSink(ByteSink.DEFAULT_SIZE);
+        }
+        while (nextRecord()) {
+            long start = System.nanoTime();
+            try {
+                for (int table = 0; table < recordSets.length; table++) {
+                    staging[table].reset();
+                    recordSets[table].writeRecords(staging[table]);
+                }
+            } catch (Exception e) {
+                invalidateRecord(e);
+                continue;
+            }
+            for (int table = 0; table < recordSets.length; table++)
+                outputStreams[table].write(staging[table].buf, 0, staging[table].size());
+            metrics.addWriteNanos(System.nanoTime() - start);
+        }
+        for (ASN1RecordSet recordSet : recordSets)
+            recordSet.addCacheCounts(metrics);
+        return recordCounts[0];
+    }
+
+    boolean isLenient() {
+        return invalidRecordListener != null;
+    }
+
+    /*
+     * Reports the record built by nextRecord as invalid after all, e.g. when its rows cannot be
+     * written, and takes its rows back out of the counts. Lenient mode only.
+     */
+    void invalidateRecord(Exception reason) {
+        int rows = 0;
+        for (int table = 0; table < recordSets.length; table++) {
+            recordCounts[table] -= recordSets[table].getRowCount();
+            rows += recordSets[table].getRowCount();
+        }
+        metrics.invalidRecord(true, rows);
+        invalidRecordListener.onInvalidRecord(recordOffset, recordEnd - recordOffset, reason);
+    }
+
+    /*
+     * Walks the next top level record and builds its rows in the record set, false at end of input.
+     * In lenient mode records that fail are skipped.
+     */
+    boolean nextRecord() throws Exception {
+        while (true) {
+            for (ASN1RecordSet recordSet : recordSets)
+                recordSet.purge();
+            if (!reader.hasRemaining())
+                return false;
+            recordOffset = reader.position();
+            recordEnd = -1;
+            skipRest = false;
+            try {
+                walkRecord();
+                metrics.addBytesRead(reader.position() - recordOffset);
+                return true;
+            } catch (Exception e) {
+                if (invalidRecordListener == null || recordEnd < 0 || reader.position() > recordEnd)
+                    throw e;
+                level = 0;
+                // short of recordEnd when the input is truncated, the next hasRemaining() then ends the parse
+                reader.skipAtMost(recordEnd - reader.position());
+                long end = reader.position();
+                metrics.addBytesRead(end - recordOffset);
+                metrics.invalidRecord(false, 0);
+                invalidRecordListener.onInvalidRecord(recordOffset, end - recordOffset, e);
+            }
+        }
+    }
+
+    private void walkRecord() throws Exception {
+        long start = System.nanoTime();
+        if (digIn(root) == END_OF_CONTENTS)
+            throw new IOException("Unexpected end-of-contents. pos: " + reader.position());
+        recordEnd = reader.position();
+        long walked = System.nanoTime();
+        metrics.addWalkNanos(walked - start);
+
+        for (int table = 0; table < recordSets.length; table++)
+            recordSets[table].buildRecords(recordCounts[table]);
+        // counted once every table is built, so a record failing in between is not counted
+        int rows = 0;
+        for (int table = 0; table < recordSets.length; table++) {
+            recordCounts[table] += recordSets[table].getRowCount();
+            rows += recordSets[table].getRowCount();
+        }
+        metrics.addBuildNanos(System.nanoTime() - walked);
+        metrics.topLevelRecord(rows);
+    }
+
+    int digIn(ASN1SchemaNode parent) throws Exception {
+        int tag = reader.read();
+        int tagNo = reader.readTagNumber(tag);
+        int length = reader.readLength();
+        metrics.tlv();
+        if (level == 0)
+            recordEnd = length < 0 ? -1 : reader.position() + length;
+
+        if (tag == 0) {
+            if (length != 0)
+                throw new IOException("Invalid end-of-contents length: " + length);
+            return END_OF_CONTENTS;
+        }
 
         boolean isConstructed = (tag & CONSTRUCTED) != 0;// PRIMITIVE or CONSTRUCTED
         if (isConstructed) {
@@ -49,13 +288,13 @@ public class ASN1CSVParser implements BERTags {
                 case UNIVERSAL:
                     switch (tagNo) {
                         case SEQUENCE:
-                            parseDefiniteBlock(length, parentAddress + (parentAddress.length()==0?"":".") + "*");
+                            parseConstructed(length, parent.getSequenceChild());
                             return tagNo;
                         default:
                             throw new Exception("UNIVERSAL data type is invalid.");
                     }
                 case TAGGED:
-                    parseDefiniteBlock(length, currentAddress);
+                    parseConstructed(length, parent.getChild(tagNo));
                     return tagNo;
                 case APPLICATION:
                     throw new Exception("Tag APPLICATION is not defined in this context.");
@@ -65,111 +304,117 @@ public class ASN1CSVParser implements BERTags {
             throw new IOException("Invalid tag");
 
         } else {//TAG is primitive
-            readPrimitive(currentAddress, length);
+            if (length < 0)
+                throw new IOException("Indefinite length primitive. pos: " + reader.position());
+            readPrimitive(parent.getChild(tagNo), length);
             return tagNo;
         }
     }
 
-    private void parseDefiniteBlock(int length, String address) throws Exception {
-        int startPos = pos;
+    private void parseConstructed(int length, ASN1SchemaNode node) throws Exception {
+        if (length < 0) {
+            if (node.isEmpty()) {
+                metrics.skippedBlock();
+                reader.skipIndefinite(null);
+            } else
+                parseIndefiniteBlock(node);
+        } else if (node.isEmpty()) {
+            metrics.skippedBlock();
+            skip(length);
+        } else
+            parseDefiniteBlock(length, node);
+    }
+
+    private void parseDefiniteBlock(int length, ASN1SchemaNode node) throws Exception {
+        long endPos = reader.position() + length;
         int seq = 0;
         level++;
-        while (pos < startPos + length) {
+        while (reader.position() < endPos) {
             seq++;
-            digIn(address, seq, address.contains("*"));
-            if(address.contains("*"))
-                logger.finest("Address: " + address + "  Sequence: " + seq);
+            if (digIn(node) == END_OF_CONTENTS)
+                throw new IOException("Unexpected end-of-contents. pos: " + reader.position());
+            if (skipRest) {
+                skip((int) (endPos - reader.position()));
+                break;
+            }
+            if (node.isIterated() && logger.isTraceEnabled())
+                logger.trace("Address: " + node.getAddress() + "  Sequence: " + seq);
         }
         level--;
     }
 
-    void readPrimitive(String address, int length) throws Exception {
-        byte[] data = new byte[length];
-        pos += length;
-
-        if(inputStream.read(data) != length)
-            throw new Exception("Corrupted data block. pos: " + pos);
-
-        if(recordSet.hasHeader(address))
-            recordSet.populateCell(address, data);
-    }
-
-    int readTagNumber(int tag) throws IOException {
-        int tagNo = tag & 0x1f;
-
-        //
-        // with tagged object tag number is bottom 5 bits, or stored at the start of the content
-        //
-        if (tagNo == 0x1f) {
-            tagNo = 0;
-
-            int b = inputStream.read();
-            pos++;
-
-            // X.690-0207 8.1.2.4.2
-            // "c) bits 7 to 1 of the first subsequent octet shall not all be zero."
-            if ((b & 0x7f) == 0) // Note: -1 will pass
-            {
-                throw new IOException("corrupted stream - invalid high tag number found");
-            }
-
-            while ((b >= 0) && ((b & 0x80) != 0)) {
-                tagNo |= (b & 0x7f);
-                tagNo <<= 7;
-                b = inputStream.read();
-                pos++;
-            }
-
-            if (b < 0) {
-                throw new EOFException("EOF found inside tag value.");
+    /*
+     * Content of an indefinite length TLV runs up to the end-of-contents octets of its level.
+     */
+    private void parseIndefiniteBlock(ASN1SchemaNode node) throws Exception {
+        int seq = 0;
+        level++;
+        while (true) {
+            if (!reader.hasRemaining())
+                throw new EOFException("EOF found inside indefinite length block.");
+            if (digIn(node) == END_OF_CONTENTS)
+                break;
+            if (skipRest) {
+                reader.skipIndefinite(null);
+                break;
             }
-
-            tagNo |= (b & 0x7f);
+            seq++;
+            if (node.isIterated() && logger.isTraceEnabled())
+                logger.trace("Address: " + node.getAddress() + "  Sequence: " + seq);
         }
-        return tagNo;
+        level--;
     }
 
-    int readLength(InputStream s, int limit, boolean isParsing) throws IOException {
-        int length = s.read();
-        pos++;
-
-        if (length < 0) {
-            throw new EOFException("EOF found when length expected");
+    void readPrimitive(ASN1SchemaNode node, int length) throws Exception {
+        int targets = node.getTargetCount();
+        if (targets == 0) {
+            metrics.skippedPrimitive();
+            skip(length);
+            return;
         }
+        metrics.capturedPrimitive();
 
-        if (length == 0x80) {
-            return -1;      // indefinite-length encoding
+        try {
+            if (targets == 1)
+                recordSets[node.getTargetTable(0)].populateCell(node.getTargetColumn(0), node.isIterated(), reader, length);
+            else
+                populateTargets(node, length);
+            if (filtered && !node.isIterated())
+                skipRest = recordSets[0].isRejected();
+        } catch (EOFException e) {
+            throw new Exception("Corrupted data block. pos: " + reader.position());
         }
+    }
 
-        if (length > 127) {
-            int size = length & 0x7f;
-
-            // Note: The invalid long form "0xff" (see X.690 8.1.3.5c) will be caught here
-            if (size > 4) {
-                throw new IOException("DER length more than 4 bytes: " + size);
-            }
-
-            length = 0;
-            for (int i = 0; i < size; i++) {
-                int next = s.read();
-                pos++;
-
-                if (next < 0) {
-                    throw new EOFException("EOF found reading length");
-                }
-
-                length = (length << 8) + next;
-            }
-
-            if (length < 0) {
-                throw new IOException("corrupted stream - negative length found");
-            }
+    /*
+     * A value several tables capture is read once and copied into each record set.
+     */
+    private void populateTargets(ASN1SchemaNode node, int length) throws Exception {
+        byte[] data = reader.backingArray();
+        int offset;
+        if (data != null) {
+            offset = reader.readSlice(length);
+        } else {
+            if (length > value.length)
+                value = new byte[Math.max(value.length * 2, length)];
+            reader.readFully(value, 0, length);
+            data = value;
+            offset = 0;
+        }
+        for (int i = 0; i < node.getTargetCount(); i++)
+            recordSets[node.getTargetTable(i)].populateCell(node.getTargetColumn(i), node.isIterated(), data, offset, length);
+    }
 
-            if (length >= limit && !isParsing)   // after all we must have read at least 1 byte
-            {
-                throw new IOException("corrupted stream - out of bounds length found: " + length + " >= " + limit);
-            }
+    /*
+     * Moves past content no schema column refers to without reading it into memory.
+     */
+    void skip(int length) throws Exception {
+        if (length < 0)
+            throw new IOException("Invalid length to skip: " + length);
+        try {
+            reader.skip(length);
+        } catch (EOFException e) {
+            throw new Exception("Corrupted data block. pos: " + reader.position());
         }
-        return length;
     }
 }
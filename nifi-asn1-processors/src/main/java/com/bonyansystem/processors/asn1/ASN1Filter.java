@@ -0,0 +1,271 @@
+package com.bonyansystem.processors.asn1;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/*
+ * Row filter compiled against the columns of a schema, conditions joined by "and", e.g.
+ * 79.22 startsWith '432' and 79.19.2.*.2>0. Spaces around the operator are optional.
+ *
+ * INTEGER columns compare their signed value with a number using =, !=, <, <=, > and >=. The
+ * other data types compare with a quoted literal, also with startsWith, in which a quote is
+ * written twice. IA5_STRING cells are compared on their raw characters, without the quotes and
+ * escapes of the CSV text. TBCD_STRING, OCTET_STRING, IP_STRING, IPV6_STRING and BOOLEAN cells
+ * are compared on their CSV text, e.g. hex digits for OCTET_STRING. An empty cell fails every
+ * condition.
+ *
+ * Conditions are checked after the rows are built, decoding into a scratch buffer where needed,
+ * so rows failing the filter are never written. Immutable, the scratch buffer is the caller's.
+ */
+public class ASN1Filter {
+    private static final String[] OPERATORS = {"startsWith", "<=", ">=", "!=", "=", "<", ">"};
+    private static final Pattern EXPLICIT_SEQUENCE = Pattern.compile("\\[\\d*\\]");
+    private static final int EQ = 0;
+    private static final int NE = 1;
+    private static final int LT = 2;
+    private static final int LE = 3;
+    private static final int GT = 4;
+    private static final int GE = 5;
+    private static final int STARTS_WITH = 6;
+
+    private final Condition[] conditions;
+
+    public ASN1Filter(String expression, ASN1Schema schema) throws Exception {
+        ExpressionReader reader = new ExpressionReader(expression);
+        List<Condition> conditions = new ArrayList<>();
+        do {
+            conditions.add(compile(reader, schema));
+        } while (reader.readAnd());
+        this.conditions = conditions.toArray(new Condition[0]);
+    }
+
+    private static Condition compile(ExpressionReader reader, ASN1Schema schema) throws Exception {
+        String column = EXPLICIT_SEQUENCE.matcher(reader.readColumn()).replaceAll("");
+        int colNum = schema.getHeaderNum(column);
+        if (colNum == ASN1SchemaNode.NO_COLUMN)
+            throw new Exception("Filter column is not in the schema: " + column);
+        if (column.equals(ASN1Schema.REC_NO) || column.equals(ASN1Schema.SUB_SEQ) || column.equals(ASN1Schema.MULTI_RECORD))
+            throw new Exception("Filter column must be a tag address: " + column);
+        int op = toOperator(reader.readOperator());
+        String literal = reader.readLiteral();
+        DataType dataType = schema.getDataType(colNum);
+
+        if (dataType == DataType.INTEGER) {
+            if (op == STARTS_WITH)
+                throw new Exception("startsWith needs a text column: " + column);
+            if (reader.quoted)
+                throw new Exception("INTEGER column " + column + " needs a number: '" + literal + "'");
+            try {
+                return new Condition(colNum, op, dataType, new BigInteger(literal), null);
+            } catch (NumberFormatException e) {
+                throw new Exception("INTEGER column " + column + " needs a number: " + literal);
+            }
+        }
+        if (!reader.quoted)
+            throw new Exception(dataType + " column " + column + " needs a quoted literal: " + literal);
+        return new Condition(colNum, op, dataType, null, literal.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int toOperator(String op) {
+        switch (op) {
+            case "=":
+                return EQ;
+            case "!=":
+                return NE;
+            case "<":
+                return LT;
+            case "<=":
+                return LE;
+            case ">":
+                return GT;
+            case ">=":
+                return GE;
+            default:
+                return STARTS_WITH;
+        }
+    }
+
+    /*
+     * True when the built row passes every condition.
+     */
+    boolean accept(ASN1RecordSet recordSet, int row, ByteSink scratch) throws Exception {
+        for (Condition condition : conditions) {
+            int length = recordSet.cellLength(row, condition.colNum);
+            if (length < 0 || !condition.test(recordSet.cellData(row, condition.colNum),
+                    recordSet.cellOffset(row, condition.colNum), length, scratch))
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * True when a master value fails a condition on its column, which rejects every row of the record.
+     */
+    boolean rejects(int colNum, byte[] data, int offset, int length, ByteSink scratch) throws Exception {
+        for (Condition condition : conditions)
+            if (condition.colNum == colNum && !condition.test(data, offset, length, scratch))
+                return true;
+        return false;
+    }
+
+    /*
+     * Reads an expression token by token. A quoted literal is read as a whole, so an " and "
+     * inside it does not end the condition.
+     */
+    private static class ExpressionReader {
+        private final String expression;
+        private int pos;
+        boolean quoted; //the literal read last was quoted
+
+        ExpressionReader(String expression) {
+            this.expression = expression;
+        }
+
+        private boolean isSpace() {
+            return Character.isWhitespace(expression.charAt(pos));
+        }
+
+        private void skipSpaces() {
+            while (pos < expression.length() && isSpace())
+                pos++;
+        }
+
+        private Exception expected(String token) {
+            return new Exception("Invalid filter, " + token + " expected at position " + pos + ": " + expression);
+        }
+
+        String readColumn() throws Exception {
+            skipSpaces();
+            int start = pos;
+            while (pos < expression.length() && !isSpace() && "=!<>".indexOf(expression.charAt(pos)) < 0)
+                pos++;
+            if (pos == start)
+                throw expected("column");
+            return expression.substring(start, pos);
+        }
+
+        String readOperator() throws Exception {
+            skipSpaces();
+            for (String op : OPERATORS) {
+                if (expression.startsWith(op, pos)) {
+                    pos += op.length();
+                    return op;
+                }
+            }
+            throw expected("operator");
+        }
+
+        String readLiteral() throws Exception {
+            skipSpaces();
+            quoted = pos < expression.length() && expression.charAt(pos) == '\'';
+            if (!quoted) {
+                int start = pos;
+                while (pos < expression.length() && !isSpace())
+                    pos++;
+                if (pos == start)
+                    throw expected("literal");
+                return expression.substring(start, pos);
+            }
+            StringBuilder text = new StringBuilder();
+            while (true) {
+                if (++pos == expression.length())
+                    throw expected("closing quote");
+                char c = expression.charAt(pos);
+                if (c == '\'' && (pos + 1 == expression.length() || expression.charAt(pos + 1) != '\'')) {
+                    pos++;
+                    return text.toString();
+                }
+                if (c == '\'')
+                    pos++;
+                text.append(c);
+            }
+        }
+
+        /*
+         * Reads the "and" before the next condition, false at the end of the expression.
+         */
+        boolean readAnd() throws Exception {
+            int start = pos;
+            skipSpaces();
+            if (pos == expression.length())
+                return false;
+            if (pos == start || !expression.regionMatches(true, pos, "and", 0, 3)
+                    || pos + 3 == expression.length() || !Character.isWhitespace(expression.charAt(pos + 3)))
+                throw expected("and");
+            pos += 3;
+            return true;
+        }
+    }
+
+    private static class Condition {
+        final int colNum;
+        final int op;
+        final DataType dataType;
+        final boolean isLong;
+        final long number;
+        final BigInteger bigNumber;
+        final byte[] text;
+
+        Condition(int colNum, int op, DataType dataType, BigInteger bigNumber, byte[] text) {
+            this.colNum = colNum;
+            this.op = op;
+            this.dataType = dataType;
+            this.bigNumber = bigNumber;
+            this.isLong = bigNumber != null && bigNumber.bitLength() < 64;
+            this.number = isLong ? bigNumber.longValue() : 0;
+            this.text = text;
+        }
+
+        boolean test(byte[] data, int offset, int length, ByteSink scratch) throws Exception {
+            if (dataType == DataType.INTEGER)
+                return length > 0 && matches(compareInteger(data, offset, length));
+            if (dataType == DataType.IA5_STRING)
+                return testText(data, offset, length);
+            scratch.reset();
+            dataType.getCodec().encode(data, offset, length, scratch);
+            return testText(scratch.buf, 0, scratch.size());
+        }
+
+        private int compareInteger(byte[] data, int offset, int length) {
+            if (length > 8 || !isLong)
+                return new BigInteger(Arrays.copyOfRange(data, offset, offset + length)).compareTo(bigNumber);
+            long value = data[offset]; // sign extended
+            for (int i = offset + 1; i < offset + length; i++)
+                value = (value << 8) | (data[i] & 0xff);
+            return Long.compare(value, number);
+        }
+
+        private boolean testText(byte[] data, int offset, int length) {
+            int common = Math.min(length, text.length);
+            for (int i = 0; i < common; i++) {
+                int diff = (data[offset + i] & 0xff) - (text[i] & 0xff);
+                if (diff != 0)
+                    return op != STARTS_WITH && matches(diff);
+            }
+            if (op == STARTS_WITH)
+                return length >= text.length;
+            return matches(length - text.length);
+        }
+
+        private boolean matches(int comparison) {
+            switch (op) {
+                case EQ:
+                    return comparison == 0;
+                case NE:
+                    return comparison != 0;
+                case LT:
+                    return comparison < 0;
+                case LE:
+                    return comparison <= 0;
+                case GT:
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+    }
+}
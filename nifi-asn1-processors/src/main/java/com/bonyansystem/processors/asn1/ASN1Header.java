@@ -2,7 +2,6 @@ package com.bonyansystem.processors.asn1;
 
 public class ASN1Header {
     private String headerName;
-    private int currentRow;
     private int explicitSequence;
     private int colNum;
 
@@ -14,14 +13,6 @@ public class ASN1Header {
         this.headerName = headerName;
     }
 
-    public int getCurrentRow() {
-        return currentRow;
-    }
-
-    public void setCurrentRow(int currentRow) {
-        this.currentRow = currentRow;
-    }
-
     public int getExplicitSequence() {
         return explicitSequence;
     }
@@ -0,0 +1,8 @@
+package com.bonyansystem.processors.asn1;
+
+/*
+ * Receives the top level records a lenient parser skipped, by their position in the input.
+ */
+public interface ASN1InvalidRecordListener {
+    void onInvalidRecord(long offset, long length, Exception reason);
+}
@@ -0,0 +1,157 @@
+package com.bonyansystem.processors.asn1;
+
+import org.apache.nifi.logging.ComponentLog;
+
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Parses one input on several threads. Top level records are self contained definite length
+ * TLVs, so the input is cut into record aligned chunks by their tag and length only. Each chunk
+ * is decoded with its own ASN1RecordSet and the CSV is written in input order.
+ */
+public class ASN1ParallelParser {
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private final ASN1Schema schema;
+    private final int threads;
+    private final int chunkSize;
+    private final ComponentLog logger;
+    private volatile int spillThreshold;
+    private volatile ASN1Filter filter;
+
+    public ASN1ParallelParser(ASN1Schema schema, int threads) {
+        this(schema, threads, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ASN1ParallelParser(ASN1Schema schema, int threads, int chunkSize) {
+        this(schema, threads, chunkSize, JulComponentLog.DEFAULT);
+    }
+
+    public ASN1ParallelParser(ASN1Schema schema, int threads, int chunkSize, ComponentLog logger) {
+        this.schema = schema;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        this.logger = logger;
+    }
+
+    /*
+     * Rows of one top level record each chunk keeps in memory, see ASN1RecordSet.setSpillThreshold.
+     */
+    public void setSpillThreshold(int rows) {
+        if (rows > 0 && filter != null)
+            throw new IllegalStateException("Rows cannot be spilled when a filter is set.");
+        this.spillThreshold = rows;
+    }
+
+    /*
+     * Rows every chunk keeps, see ASN1CSVParser.setFilter.
+     */
+    public void setFilter(ASN1Filter filter) {
+        if (filter != null && spillThreshold > 0)
+            throw new IllegalStateException("A filter cannot be set when rows are spilled.");
+        this.filter = filter;
+    }
+
+    public int parse(BERReader reader, OutputStream outputStream) throws Exception {
+        return parse(reader, outputStream, new ASN1ParseMetrics());
+    }
+
+    /*
+     * Phase times in metrics are summed over the parser threads. Write time is the CSV encoding
+     * of the chunks plus copying them out in order.
+     */
+    public int parse(BERReader reader, OutputStream outputStream, ASN1ParseMetrics metrics) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "ASN.1 parser " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Future<Chunk>> pending = new ArrayDeque<>();
+        ASN1RecordSet recordNumbers = new ASN1RecordSet(schema);
+        ASN1RecordScanner scanner = new ASN1RecordScanner(reader);
+        ByteSink sink = new ByteSink(outputStream, ByteSink.DEFAULT_SIZE);
+        int recordCount = 0;
+
+        try {
+            byte[] data = new byte[chunkSize];
+            int used = 0;
+            while (scanner.next()) {
+                int length = scanner.getRecordLength();
+                if (used > 0 && used + length > data.length) {
+                    pending.add(executor.submit(new Chunk(data, used)));
+                    data = new byte[chunkSize];
+                    used = 0;
+                    // bound the chunks held in memory
+                    if (pending.size() >= threads * 2)
+                        recordCount = pending.poll().get().writeTo(sink, recordNumbers, recordCount, metrics);
+                }
+                if (length > data.length)
+                    data = Arrays.copyOf(data, length);
+                scanner.copyRecord(data, used);
+                used += length;
+            }
+            if (used > 0)
+                pending.add(executor.submit(new Chunk(data, used)));
+
+            while (!pending.isEmpty())
+                recordCount = pending.poll().get().writeTo(sink, recordNumbers, recordCount, metrics);
+            long start = System.nanoTime();
+            sink.drain();
+            metrics.addWriteNanos(System.nanoTime() - start);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            throw e;
+        } finally {
+            executor.shutdownNow();
+        }
+        if (logger.isDebugEnabled())
+            logger.debug("Parse completed. " + metrics);
+        return recordCount;
+    }
+
+    private class Chunk implements Callable<Chunk> {
+        private final byte[] data;
+        private final int length;
+        private ChunkOutput output;
+        private int recordCount;
+        private ASN1ParseMetrics metrics;
+
+        Chunk(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+
+        @Override
+        public Chunk call() throws Exception {
+            output = new ChunkOutput(length);
+            try (ASN1CSVParser parser = new ASN1CSVParser(new ByteArrayBERReader(data, 0, length), schema, logger)) {
+                if (schema.hasHeader(ASN1Schema.REC_NO))
+                    parser.getRecordSet().setRecordNumberOutput(output);
+                parser.setSpillThreshold(spillThreshold);
+                parser.setFilter(filter);
+                recordCount = parser.parseRecords(output);
+                metrics = parser.getMetrics();
+            }
+            return this;
+        }
+
+        int writeTo(ByteSink sink, ASN1RecordSet recordNumbers, int initialRecordNum,
+                    ASN1ParseMetrics total) throws Exception {
+            long start = System.nanoTime();
+            output.writeTo(sink, recordNumbers, initialRecordNum);
+            total.add(metrics);
+            total.addWriteNanos(System.nanoTime() - start);
+            return initialRecordNum + recordCount;
+        }
+    }
+}
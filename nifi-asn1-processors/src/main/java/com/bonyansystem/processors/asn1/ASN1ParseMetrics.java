@@ -0,0 +1,190 @@
+package com.bonyansystem.processors.asn1;
+
+/*
+ * Counters and phase timings of one parse. A parser keeps adding to its metrics until reset,
+ * the parallel parser adds the metrics of all its chunks into one.
+ */
+public class ASN1ParseMetrics {
+    private long tlvs;
+    private long capturedPrimitives;
+    private long skippedPrimitives;
+    private long skippedBlocks;
+    private long bytesRead;
+    private long topLevelRecords;
+    private long records;
+    private long invalidRecords;
+    private long cacheHits;
+    private long cacheMisses;
+    private long walkNanos;
+    private long buildNanos;
+    private long writeNanos;
+
+    void tlv() {
+        tlvs++;
+    }
+
+    void capturedPrimitive() {
+        capturedPrimitives++;
+    }
+
+    void skippedPrimitive() {
+        skippedPrimitives++;
+    }
+
+    void skippedBlock() {
+        skippedBlocks++;
+    }
+
+    void topLevelRecord(int rows) {
+        topLevelRecords++;
+        records += rows;
+    }
+
+    /*
+     * A top level record skipped in lenient mode. counted is true when it was already counted
+     * with topLevelRecord, with rows rows.
+     */
+    void invalidRecord(boolean counted, int rows) {
+        invalidRecords++;
+        if (counted) {
+            topLevelRecords--;
+            records -= rows;
+        }
+    }
+
+    void addCacheCounts(long hits, long misses) {
+        cacheHits += hits;
+        cacheMisses += misses;
+    }
+
+    void addBytesRead(long bytes) {
+        bytesRead += bytes;
+    }
+
+    void addWalkNanos(long nanos) {
+        walkNanos += nanos;
+    }
+
+    void addBuildNanos(long nanos) {
+        buildNanos += nanos;
+    }
+
+    void addWriteNanos(long nanos) {
+        writeNanos += nanos;
+    }
+
+    public void add(ASN1ParseMetrics other) {
+        tlvs += other.tlvs;
+        capturedPrimitives += other.capturedPrimitives;
+        skippedPrimitives += other.skippedPrimitives;
+        skippedBlocks += other.skippedBlocks;
+        bytesRead += other.bytesRead;
+        topLevelRecords += other.topLevelRecords;
+        records += other.records;
+        invalidRecords += other.invalidRecords;
+        cacheHits += other.cacheHits;
+        cacheMisses += other.cacheMisses;
+        walkNanos += other.walkNanos;
+        buildNanos += other.buildNanos;
+        writeNanos += other.writeNanos;
+    }
+
+    public void reset() {
+        tlvs = 0;
+        capturedPrimitives = 0;
+        skippedPrimitives = 0;
+        skippedBlocks = 0;
+        bytesRead = 0;
+        topLevelRecords = 0;
+        records = 0;
+        invalidRecords = 0;
+        cacheHits = 0;
+        cacheMisses = 0;
+        walkNanos = 0;
+        buildNanos = 0;
+        writeNanos = 0;
+    }
+
+    /*
+     * TLVs whose header was read. Content of skipped blocks is not counted.
+     */
+    public long getTlvs() {
+        return tlvs;
+    }
+
+    public long getCapturedPrimitives() {
+        return capturedPrimitives;
+    }
+
+    public long getSkippedPrimitives() {
+        return skippedPrimitives;
+    }
+
+    /*
+     * Constructed TLVs passed over without walking because no column is below them.
+     */
+    public long getSkippedBlocks() {
+        return skippedBlocks;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getTopLevelRecords() {
+        return topLevelRecords;
+    }
+
+    /*
+     * Rows emitted, a top level record gives one row per iteration.
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /*
+     * Top level records skipped in lenient mode.
+     */
+    public long getInvalidRecords() {
+        return invalidRecords;
+    }
+
+    /*
+     * Cells of :CACHE columns written from the decode cache, and decoded then added to it.
+     */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public long getWalkNanos() {
+        return walkNanos;
+    }
+
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "TLVs: " + tlvs +
+                " Captured: " + capturedPrimitives +
+                " Skipped primitives: " + skippedPrimitives +
+                " Skipped blocks: " + skippedBlocks +
+                " Bytes: " + bytesRead +
+                " Records: " + records +
+                " Invalid: " + invalidRecords +
+                " Cache hits: " + cacheHits +
+                " Cache misses: " + cacheMisses +
+                " Walk: " + walkNanos / 1000000 + "ms" +
+                " Build: " + buildNanos / 1000000 + "ms" +
+                " Write: " + writeNanos / 1000000 + "ms";
+    }
+}
@@ -17,39 +17,73 @@
 package com.bonyansystem.processors.asn1;
 
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.components.Validator;
 import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.annotation.behavior.DynamicProperty;
 import org.apache.nifi.annotation.behavior.ReadsAttribute;
 import org.apache.nifi.annotation.behavior.ReadsAttributes;
+import org.apache.nifi.annotation.behavior.SupportsBatching;
 import org.apache.nifi.annotation.behavior.WritesAttribute;
 import org.apache.nifi.annotation.behavior.WritesAttributes;
 import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.SeeAlso;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.DataUnit;
 import org.apache.nifi.processor.ProcessContext;
 import org.apache.nifi.processor.ProcessSession;
 import org.apache.nifi.processor.ProcessorInitializationContext;
 import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.util.FlowFileFilters;
 import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 @Tags({"ASN1Processor"})
-@CapabilityDescription("Extract ASN.1 binary file to CSV records.")
+@CapabilityDescription("Extract ASN.1 binary file to CSV or Parquet records.")
 @SeeAlso({})
 @ReadsAttributes({@ReadsAttribute(attribute = "", description = "")})
-@WritesAttributes({@WritesAttribute(attribute = "", description = "")})
+@WritesAttributes({@WritesAttribute(attribute = "RecordCount", description = "Number of CSV records written."),
+        @WritesAttribute(attribute = "ParseDuration", description = "Decoding time in milliseconds."),
+        @WritesAttribute(attribute = "ParseThroughput", description = "Decoded input bytes per second."),
+        @WritesAttribute(attribute = "TopLevelRecordCount", description = "Top level records decoded from the input."),
+        @WritesAttribute(attribute = "InvalidRecordCount", description = "Records of the input routed to Invalid."),
+        @WritesAttribute(attribute = "WalkDuration", description = "Milliseconds spent walking the BER input."),
+        @WritesAttribute(attribute = "BuildDuration", description = "Milliseconds spent building rows."),
+        @WritesAttribute(attribute = "WriteDuration", description = "Milliseconds spent encoding and writing rows."),
+        @WritesAttribute(attribute = "DecodeCacheHits", description = "Cells of :CACHE columns written from the decode cache."),
+        @WritesAttribute(attribute = "DecodeCacheMisses", description = "Cells of :CACHE columns decoded and added to the cache."),
+        @WritesAttribute(attribute = "TableName", description = "Name of the table property the CSV was written for, " +
+                "not set for the CSV Schema output."),
+        @WritesAttribute(attribute = "Schema", description = "Columns of the rows, Binary output only."),
+        @WritesAttribute(attribute = "DataTypes", description = "Data types of the columns, Binary output only."),
+        @WritesAttribute(attribute = "InvalidOffset", description = "Input offset of a record routed to Invalid."),
+        @WritesAttribute(attribute = "InvalidReason", description = "Decoding error of a record routed to Invalid.")})
+@DynamicProperty(name = "Table name", value = "Columns;Data types",
+        description = "Additional CSV table decoded in the same pass over the input, e.g. 79.22,79.34.*.1;TBCD_STRING,INTEGER. " +
+                "Columns and data types are given as in CSV Schema and Data Types, separated by a semicolon. " +
+                "Every table is written to its own FlowFile on Success.")
+@SupportsBatching
 public class ASN1Processor extends AbstractProcessor {
-    static Logger logger = Logger.getLogger("com.bonyansystem");
     public static final PropertyDescriptor CSV_SCHEMA = new PropertyDescriptor
             .Builder().name("CSV_SCHEMA")
             .displayName("CSV Schema")
@@ -63,7 +97,9 @@ public class ASN1Processor extends AbstractProcessor {
     public static final PropertyDescriptor DATA_TYPES = new PropertyDescriptor
             .Builder().name("DATA_TYPES")
             .displayName("Data Types")
-            .description("Comma separated data types: TBCD_STRING, OCTET_STRING, IA5_STRING, IP_STRING, INTEGER, IPV6_STRING, BOOLEAN.")
+            .description("Comma separated data types: TBCD_STRING, OCTET_STRING, IA5_STRING, IP_STRING, INTEGER, IPV6_STRING, BOOLEAN. " +
+                    "A :CACHE suffix, e.g. IP_STRING:CACHE, keeps the decoded text of the last 4096 distinct values of the column " +
+                    "for columns where few values repeat across records.")
             .required(true)
             .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
             .build();
@@ -82,13 +118,149 @@ public class ASN1Processor extends AbstractProcessor {
     public static final PropertyDescriptor LOG_LEVEL = new PropertyDescriptor
             .Builder().name("LOG_LEVEL")
             .displayName("Logging")
-            .description("ASN.1 decoding logging. ALL, INFO, OFF")
+            .description("ASN.1 decoding logging of this processor. ALL, INFO, OFF. Applies on top of the NiFi log level of the processor.")
             .required(false)
             .allowableValues("ALL", "INFO", "OFF")
             .defaultValue("INFO")
             .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
             .build();
 
+    public static final PropertyDescriptor PARSE_THREADS = new PropertyDescriptor
+            .Builder().name("PARSE_THREADS")
+            .displayName("Parse Threads")
+            .description("Number of threads decoding one FlowFile. With more than one thread the content is split " +
+                    "into chunks on top level record boundaries which are decoded in parallel and written in order. Default=1")
+            .required(false)
+            .defaultValue("1")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor BATCH_SIZE = new PropertyDescriptor
+            .Builder().name("BATCH_SIZE")
+            .displayName("Batch Size")
+            .description("Maximum number of FlowFiles decoded in one session commit. Default=1")
+            .required(false)
+            .defaultValue("1")
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor BATCH_DATA_SIZE = new PropertyDescriptor
+            .Builder().name("BATCH_DATA_SIZE")
+            .displayName("Batch Data Size")
+            .description("Maximum total size of the FlowFiles decoded in one session commit. The first FlowFile " +
+                    "is always taken even when it is larger. Default=10 MB")
+            .required(false)
+            .defaultValue("10 MB")
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor SPILL_THRESHOLD = new PropertyDescriptor
+            .Builder().name("SPILL_THRESHOLD")
+            .displayName("Spill Threshold")
+            .description("Rows of one top level record kept in memory. Further rows, e.g. of records with thousands " +
+                    "of iterated container entries, are written to a temp file and read back when the record " +
+                    "is complete. 0 keeps every row in memory. Default=0")
+            .required(false)
+            .defaultValue("0")
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor OUTPUT_FORMAT = new PropertyDescriptor
+            .Builder().name("OUTPUT_FORMAT")
+            .displayName("Output Format")
+            .description("CSV writes the decoded text of every column. Parquet writes typed columns: INTEGER as INT64, " +
+                    "BOOLEAN as BOOLEAN, TBCD_STRING and IA5_STRING as strings, OCTET_STRING as binary, IP_STRING and " +
+                    "IPV6_STRING as 4 and 16 byte fixed length binary. Parquet needs Parse Threads=1 and Spill Threshold=0. " +
+                    "Binary writes length prefixed rows with a presence bitmap, INTEGER cells as zigzag varints and other " +
+                    "cells as a varint length and the raw undecoded bytes, for processors that decode values themselves. " +
+                    "Binary needs Parse Threads=1. Default=CSV")
+            .required(false)
+            .allowableValues("CSV", "Parquet", "Binary")
+            .defaultValue("CSV")
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor PARQUET_COMPRESSION = new PropertyDescriptor
+            .Builder().name("PARQUET_COMPRESSION")
+            .displayName("Parquet Compression")
+            .description("Compression of the Parquet column chunks. Default=SNAPPY")
+            .required(false)
+            .allowableValues("UNCOMPRESSED", "SNAPPY", "GZIP")
+            .defaultValue("SNAPPY")
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor SKIP_INVALID_RECORDS = new PropertyDescriptor
+            .Builder().name("SKIP_INVALID_RECORDS")
+            .displayName("Skip Invalid Records")
+            .description("true: a top level record that fails to decode, or with Parquet output has a value its column " +
+                    "type cannot hold, is skipped using its length and routed to Invalid with its offset and the reason, " +
+                    "and decoding goes on with the next record. A last record cut off by the end of the content is routed " +
+                    "to Invalid with the bytes that are left. Records of indefinite " +
+                    "length cannot be skipped and still fail the FlowFile. Needs Parse Threads=1. false: any invalid " +
+                    "record routes the FlowFile to Failure. Default=false")
+            .required(false)
+            .allowableValues("true", "false")
+            .defaultValue("false")
+            .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor FILTER = new PropertyDescriptor
+            .Builder().name("FILTER")
+            .displayName("Filter")
+            .description("Rows of the CSV Schema output to keep, conditions on its columns joined by 'and', e.g. " +
+                    "79.22 startsWith '432' and 79.19.2.*.2 > 0, spaces around the operator are optional. INTEGER columns " +
+                    "compare their signed value with a number using =, !=, <, <=, > and >=. Other columns compare with a quoted " +
+                    "literal, also with startsWith, in which a quote is written twice. IA5_STRING columns are compared on their " +
+                    "raw characters, without the quotes and escapes of the CSV text. TBCD_STRING, OCTET_STRING (hex), IP_STRING, " +
+                    "IPV6_STRING and BOOLEAN columns are compared on their CSV text. An empty cell fails every condition. Rows are checked before they are written, and a record whose master column fails " +
+                    "is skipped without decoding the rest of it. Needs Spill Threshold=0.")
+            .required(false)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor INPUT_COMPRESSION = new PropertyDescriptor
+            .Builder().name("INPUT_COMPRESSION")
+            .displayName("Input Compression")
+            .description("Compression of the ASN.1 content, decompressed while it is decoded. Default=NONE")
+            .required(false)
+            .allowableValues("NONE", "GZIP", "BZIP2", "ZSTD", "LZ4")
+            .defaultValue("NONE")
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor OUTPUT_COMPRESSION = new PropertyDescriptor
+            .Builder().name("OUTPUT_COMPRESSION")
+            .displayName("Output Compression")
+            .description("Compression of the CSV or Binary output, compressed while it is written. Parquet output " +
+                    "uses Parquet Compression instead. Default=NONE")
+            .required(false)
+            .allowableValues("NONE", "GZIP", "BZIP2", "ZSTD", "LZ4")
+            .defaultValue("NONE")
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor COMPRESSION_LEVEL = new PropertyDescriptor
+            .Builder().name("COMPRESSION_LEVEL")
+            .displayName("Compression Level")
+            .description("GZIP level 1-9, ZSTD level 1-22 or BZIP2 block size 1-9 of the output. Not used by LZ4. " +
+                    "When empty the codec default is used.")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor PIPELINE_BUFFERS = new PropertyDescriptor
+            .Builder().name("PIPELINE_BUFFERS")
+            .displayName("Pipeline Buffers")
+            .description("Number of 256 KB blocks read ahead of decoding and written behind it. With more than 0 the " +
+                    "content is read and decompressed on one thread and the output compressed and written on another, " +
+                    "both overlapping with decoding. These are virtual threads on Java 21 and later. 0 reads and writes " +
+                    "on the decoding thread. Default=0")
+            .required(false)
+            .defaultValue("0")
+            .addValidator(StandardValidators.NON_NEGATIVE_INTEGER_VALIDATOR)
+            .build();
+
     public static final Relationship SUCCESS = new Relationship.Builder()
             .name("Success")
             .description("Success relationship.")
@@ -99,10 +271,33 @@ public class ASN1Processor extends AbstractProcessor {
             .description("ASN.1 parse error relationship.")
             .build();
 
+    public static final Relationship INVALID = new Relationship.Builder()
+            .name("Invalid")
+            .description("Content of top level records skipped with Skip Invalid Records.")
+            .build();
+
     private List<PropertyDescriptor> descriptors;
 
     private Set<Relationship> relationships;
 
+    private volatile ASN1Schema schema;
+    private volatile ASN1SchemaSet schemaSet; //null without table properties
+    private volatile String[] tableNames;
+    private volatile ASN1Schema[] tableSchemas;
+    private volatile CompressionCodecName parquetCompression; //null for CSV output
+    private volatile boolean binaryOutput;
+    private volatile boolean skipInvalidRecords;
+    private volatile StreamCompression inputCompression;
+    private volatile StreamCompression outputCompression;
+    private volatile int compressionLevel; //0 for the codec default
+    private volatile int pipelineBuffers; //0 without read-ahead and write-behind threads
+    private volatile ASN1Filter filter;
+    private volatile ASN1ParallelParser parallelParser;
+    private volatile int bufferSize;
+    private volatile int spillThreshold;
+    private final BlockingQueue<Decoder> decoders = new LinkedBlockingQueue<>();
+    private volatile ComponentLog logger;
+
     @Override
     protected void init(final ProcessorInitializationContext context) {
         final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
@@ -110,12 +305,25 @@ public class ASN1Processor extends AbstractProcessor {
         descriptors.add(DATA_TYPES);
         descriptors.add(BUFFER_SIZE);
         descriptors.add(LOG_LEVEL);
+        descriptors.add(PARSE_THREADS);
+        descriptors.add(BATCH_SIZE);
+        descriptors.add(BATCH_DATA_SIZE);
+        descriptors.add(SPILL_THRESHOLD);
+        descriptors.add(OUTPUT_FORMAT);
+        descriptors.add(PARQUET_COMPRESSION);
+        descriptors.add(SKIP_INVALID_RECORDS);
+        descriptors.add(FILTER);
+        descriptors.add(INPUT_COMPRESSION);
+        descriptors.add(OUTPUT_COMPRESSION);
+        descriptors.add(COMPRESSION_LEVEL);
+        descriptors.add(PIPELINE_BUFFERS);
 
         this.descriptors = Collections.unmodifiableList(descriptors);
 
         final Set<Relationship> relationships = new HashSet<Relationship>();
         relationships.add(SUCCESS);
         relationships.add(FAILURE);
+        relationships.add(INVALID);
         this.relationships = Collections.unmodifiableSet(relationships);
     }
 
@@ -129,73 +337,461 @@ public class ASN1Processor extends AbstractProcessor {
         return descriptors;
     }
 
+    @Override
+    protected PropertyDescriptor getSupportedDynamicPropertyDescriptor(final String propertyDescriptorName) {
+        return new PropertyDescriptor.Builder()
+                .name(propertyDescriptorName)
+                .description("Columns and data types of the " + propertyDescriptorName + " table separated by a semicolon.")
+                .required(false)
+                .dynamic(true)
+                .addValidator(TABLE_VALIDATOR)
+                .build();
+    }
+
+    private static final Validator TABLE_VALIDATOR = (subject, input, context) -> {
+        String explanation = null;
+        try {
+            toTableSchema(input);
+        } catch (Exception e) {
+            explanation = String.valueOf(e.getMessage());
+        }
+        return new ValidationResult.Builder()
+                .subject(subject)
+                .input(input)
+                .valid(explanation == null)
+                .explanation(explanation)
+                .build();
+    };
+
+    static ASN1Schema toTableSchema(String value) throws Exception {
+        int separator = value.indexOf(';');
+        if (separator < 0)
+            throw new Exception("Columns and data types must be separated by a semicolon.");
+        return new ASN1Schema(value.substring(0, separator).trim(), value.substring(separator + 1).trim());
+    }
+
+    @Override
+    protected Collection<ValidationResult> customValidate(final ValidationContext context) {
+        List<ValidationResult> results = new ArrayList<>();
+        if (context.getProperty(CSV_SCHEMA).getValue() != null && context.getProperty(DATA_TYPES).getValue() != null) {
+            ASN1Schema schema = null;
+            try {
+                schema = new ASN1Schema(context.getProperty(CSV_SCHEMA).getValue(), context.getProperty(DATA_TYPES).getValue());
+            } catch (Exception e) {
+                results.add(new ValidationResult.Builder()
+                        .subject(CSV_SCHEMA.getDisplayName())
+                        .valid(false)
+                        .explanation(String.valueOf(e.getMessage()))
+                        .build());
+            }
+            if (schema != null && context.getProperty(FILTER).isSet()) {
+                try {
+                    new ASN1Filter(context.getProperty(FILTER).getValue(), schema);
+                } catch (Exception e) {
+                    results.add(new ValidationResult.Builder()
+                            .subject(FILTER.getDisplayName())
+                            .valid(false)
+                            .explanation(String.valueOf(e.getMessage()))
+                            .build());
+                }
+            }
+        }
+        if (context.getProperty(FILTER).isSet() && context.getProperty(SPILL_THRESHOLD).asInteger() > 0)
+            results.add(new ValidationResult.Builder()
+                    .subject(SPILL_THRESHOLD.getDisplayName())
+                    .valid(false)
+                    .explanation("spilling rows is not supported together with a filter")
+                    .build());
+        boolean tables = false;
+        for (PropertyDescriptor property : context.getProperties().keySet())
+            tables |= property.isDynamic();
+        if (tables && context.getProperty(PARSE_THREADS).asInteger() > 1)
+            results.add(new ValidationResult.Builder()
+                    .subject(PARSE_THREADS.getDisplayName())
+                    .valid(false)
+                    .explanation("more than one thread is not supported together with table properties")
+                    .build());
+        if (context.getProperty(SKIP_INVALID_RECORDS).asBoolean() && context.getProperty(PARSE_THREADS).asInteger() > 1)
+            results.add(new ValidationResult.Builder()
+                    .subject(PARSE_THREADS.getDisplayName())
+                    .valid(false)
+                    .explanation("more than one thread is not supported with Skip Invalid Records")
+                    .build());
+        if (context.getProperty(SKIP_INVALID_RECORDS).asBoolean() && !"NONE".equals(context.getProperty(INPUT_COMPRESSION).getValue()))
+            results.add(new ValidationResult.Builder()
+                    .subject(INPUT_COMPRESSION.getDisplayName())
+                    .valid(false)
+                    .explanation("invalid records are cut out of the content, which needs uncompressed input")
+                    .build());
+        if ("Binary".equals(context.getProperty(OUTPUT_FORMAT).getValue()) && context.getProperty(PARSE_THREADS).asInteger() > 1)
+            results.add(new ValidationResult.Builder()
+                    .subject(PARSE_THREADS.getDisplayName())
+                    .valid(false)
+                    .explanation("more than one thread is not supported with Binary output")
+                    .build());
+        if ("Parquet".equals(context.getProperty(OUTPUT_FORMAT).getValue())) {
+            if (context.getProperty(PARSE_THREADS).asInteger() > 1)
+                results.add(new ValidationResult.Builder()
+                        .subject(PARSE_THREADS.getDisplayName())
+                        .valid(false)
+                        .explanation("more than one thread is not supported with Parquet output")
+                        .build());
+            if (context.getProperty(SPILL_THRESHOLD).asInteger() > 0)
+                results.add(new ValidationResult.Builder()
+                        .subject(SPILL_THRESHOLD.getDisplayName())
+                        .valid(false)
+                        .explanation("spilling rows is not supported with Parquet output")
+                        .build());
+            if (!"NONE".equals(context.getProperty(OUTPUT_COMPRESSION).getValue()))
+                results.add(new ValidationResult.Builder()
+                        .subject(OUTPUT_COMPRESSION.getDisplayName())
+                        .valid(false)
+                        .explanation("Parquet output is compressed with Parquet Compression")
+                        .build());
+        }
+        return results;
+    }
+
     @OnScheduled
     public void onScheduled(final ProcessContext context) {
+        logger = new FilteredComponentLog(getLogger(),
+                FilteredComponentLog.toLogLevel(context.getProperty(LOG_LEVEL).getValue()));
+        try {
+            schema = new ASN1Schema(context.getProperty(CSV_SCHEMA).getValue(),
+                    context.getProperty(DATA_TYPES).getValue());
+        } catch (Exception e) {
+            throw new ProcessException("Invalid ASN.1 schema.", e);
+        }
+        try {
+            filter = context.getProperty(FILTER).isSet() ? new ASN1Filter(context.getProperty(FILTER).getValue(), schema) : null;
+        } catch (Exception e) {
+            throw new ProcessException("Invalid filter.", e);
+        }
+        Map<String, ASN1Schema> tables = new LinkedHashMap<>();
+        tables.put(null, schema);
+        for (Map.Entry<PropertyDescriptor, String> property : context.getProperties().entrySet()) {
+            if (!property.getKey().isDynamic())
+                continue;
+            try {
+                tables.put(property.getKey().getName(), toTableSchema(property.getValue()));
+            } catch (Exception e) {
+                throw new ProcessException("Invalid ASN.1 schema of table " + property.getKey().getName(), e);
+            }
+        }
+        schemaSet = tables.size() > 1 ? new ASN1SchemaSet(tables) : null;
+        tableNames = tables.keySet().toArray(new String[0]);
+        tableSchemas = tables.values().toArray(new ASN1Schema[0]);
+        parquetCompression = "Parquet".equals(context.getProperty(OUTPUT_FORMAT).getValue())
+                ? CompressionCodecName.valueOf(context.getProperty(PARQUET_COMPRESSION).getValue()) : null;
+        binaryOutput = "Binary".equals(context.getProperty(OUTPUT_FORMAT).getValue());
+        skipInvalidRecords = context.getProperty(SKIP_INVALID_RECORDS).asBoolean();
+        inputCompression = StreamCompression.valueOf(context.getProperty(INPUT_COMPRESSION).getValue());
+        outputCompression = StreamCompression.valueOf(context.getProperty(OUTPUT_COMPRESSION).getValue());
+        compressionLevel = context.getProperty(COMPRESSION_LEVEL).isSet() ? context.getProperty(COMPRESSION_LEVEL).asInteger() : 0;
+        pipelineBuffers = context.getProperty(PIPELINE_BUFFERS).asInteger();
+        if (pipelineBuffers > 0 && logger.isDebugEnabled())
+            logger.debug("Pipelined I/O on " + (PipelineThreads.isVirtual() ? "virtual" : "platform") + " threads.");
+        bufferSize = context.getProperty(BUFFER_SIZE).asInteger() * 1024;
+        spillThreshold = context.getProperty(SPILL_THRESHOLD).asInteger();
+        int parseThreads = context.getProperty(PARSE_THREADS).asInteger();
+        parallelParser = parseThreads > 1
+                ? new ASN1ParallelParser(schema, parseThreads, ASN1ParallelParser.DEFAULT_CHUNK_SIZE, logger) : null;
+        if (parallelParser != null) {
+            parallelParser.setSpillThreshold(spillThreshold);
+            parallelParser.setFilter(filter);
+        }
+        closeDecoders();
+    }
 
+    @OnStopped
+    public void onStopped() {
+        closeDecoders();
+    }
+
+    private void closeDecoders() {
+        Decoder decoder;
+        while ((decoder = decoders.poll()) != null) {
+            try {
+                decoder.parser.close();
+            } catch (IOException e) {
+                logger.warn("Deleting spill file.", e);
+            }
+        }
     }
 
     @Override
     public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
-        int recordCount = 0;
-        FlowFile flowFile = session.get();
-        if (flowFile == null) {
+        List<FlowFile> flowFiles = session.get(FlowFileFilters.newSizeBasedFilter(
+                context.getProperty(BATCH_DATA_SIZE).asDataSize(DataUnit.B),
+                DataUnit.B,
+                context.getProperty(BATCH_SIZE).asInteger()));
+        if (flowFiles.isEmpty()) {
             return;
         }
-        int bufferSize = context.getProperty(BUFFER_SIZE).asInteger() * 1024;
-        FlowFile csvFlowFile = session.create(flowFile);
 
-        switch(context.getProperty(LOG_LEVEL).getValue()){
-            case "ALL":
-                logger.setLevel(Level.ALL);
-                break;
-            case "INFO":
-                logger.setLevel(Level.INFO);
-                break;
-            case "OFF":
-                logger.setLevel(Level.OFF);
-                break;
-            default:
-                logger.setLevel(Level.INFO);
+        Exception failure = null;
+        // one reader and parser per concurrent task, reused for every FlowFile it decodes
+        Decoder decoder = decoders.poll();
+        if (decoder == null)
+            decoder = new Decoder(schema, schemaSet, bufferSize, spillThreshold, binaryOutput, skipInvalidRecords, filter, logger);
+
+        String[] tableNames = this.tableNames;
+        for (FlowFile flowFile : flowFiles) {
+            // one output FlowFile per table
+            FlowFile[] csvFlowFiles = new FlowFile[tableNames.length];
+            for (int table = 0; table < tableNames.length; table++)
+                csvFlowFiles[table] = session.create(flowFile);
+            try {
+                long start = System.nanoTime();
+                long[] recordCounts = new long[tableNames.length];
+                ASN1ParseMetrics metrics = parse(session, flowFile, csvFlowFiles, recordCounts, decoder);
+                long duration = System.nanoTime() - start;
+
+                if (logger.isInfoEnabled())
+                    logger.info("Parse completed. " + describeRecordCounts(tableNames, recordCounts));
+                if (logger.isDebugEnabled())
+                    logger.debug(metrics.toString());
+                Map<String, String> metricsAttributes = metricsAttributes(metrics, duration);
+                for (int table = 0; table < tableNames.length; table++) {
+                    FlowFile csvFlowFile = csvFlowFiles[table];
+                    csvFlowFile = session.putAttribute(csvFlowFile, "RecordCount", Long.toString(recordCounts[table]));
+                    csvFlowFile = session.putAllAttributes(csvFlowFile, metricsAttributes);
+                    if (tableNames[table] != null)
+                        csvFlowFile = session.putAttribute(csvFlowFile, "TableName", tableNames[table]);
+                    if (binaryOutput)
+                        csvFlowFile = putSchemaAttributes(session, csvFlowFile, tableSchemas[table]);
+                    csvFlowFiles[table] = csvFlowFile;
+                }
+                publish(session, metrics);
+                session.transfer(Arrays.asList(csvFlowFiles), SUCCESS);
+                transferInvalidRecords(session, flowFile, decoder.invalidRecords);
+                session.remove(flowFile);
+            } catch (Exception e) {
+                logger.error("ASN.1 Error while parsing.", e);
+                session.transfer(flowFile, FAILURE);
+                session.remove(Arrays.asList(csvFlowFiles));
+                if (failure == null)
+                    failure = e;
+            }
         }
 
-        BufferedOutputStream bos = new BufferedOutputStream(session.write(csvFlowFile), bufferSize);
-        BufferedInputStream bis = new BufferedInputStream(session.read(flowFile), bufferSize);
+        decoders.offer(decoder);
 
-        ASN1CSVParser p = null;
-        try {
-            logger.info("Initiating ASN.1 parser.");
-            p = new ASN1CSVParser(bis,
-                    context.getProperty(CSV_SCHEMA).toString(),
-                    context.getProperty(DATA_TYPES).toString());
+        if (logger.isDebugEnabled())
+            logger.debug("Committing " + flowFiles.size() + " flowfile(s).");
+        session.commit();
+        if (failure != null)
+            throw new ProcessException("ASN.1 Error while parsing.", failure);
+    }
+
+    private static String describeRecordCounts(String[] tableNames, long[] recordCounts) {
+        StringBuilder text = new StringBuilder("Record Count: ").append(recordCounts[0]);
+        for (int table = 1; table < tableNames.length; table++)
+            text.append(", ").append(tableNames[table]).append(": ").append(recordCounts[table]);
+        return text.toString();
+    }
 
-            recordCount = p.parse(bos);
+    /*
+     * Metrics of the parse of one input, written to each of its output FlowFiles so they reach
+     * provenance with them.
+     */
+    private static Map<String, String> metricsAttributes(ASN1ParseMetrics metrics, long duration) {
+        Map<String, String> attributes = new HashMap<>();
+        attributes.put("ParseDuration", Long.toString(duration / 1000000));
+        attributes.put("ParseThroughput", Long.toString(duration > 0 ? metrics.getBytesRead() * 1000000000L / duration : 0));
+        attributes.put("TopLevelRecordCount", Long.toString(metrics.getTopLevelRecords()));
+        attributes.put("InvalidRecordCount", Long.toString(metrics.getInvalidRecords()));
+        attributes.put("WalkDuration", Long.toString(metrics.getWalkNanos() / 1000000));
+        attributes.put("BuildDuration", Long.toString(metrics.getBuildNanos() / 1000000));
+        attributes.put("WriteDuration", Long.toString(metrics.getWriteNanos() / 1000000));
+        attributes.put("DecodeCacheHits", Long.toString(metrics.getCacheHits()));
+        attributes.put("DecodeCacheMisses", Long.toString(metrics.getCacheMisses()));
+        return attributes;
+    }
 
-            bis.close();
-            bos.close();
+    /*
+     * Clones the bytes of each skipped record out of the input, once it is no longer being read.
+     */
+    private void transferInvalidRecords(final ProcessSession session, FlowFile flowFile, List<InvalidRecord> invalidRecords) {
+        for (InvalidRecord invalidRecord : invalidRecords) {
+            logger.warn("Skipped invalid ASN.1 record. Offset: " + invalidRecord.offset, invalidRecord.reason);
+            FlowFile invalid = session.clone(flowFile, invalidRecord.offset, invalidRecord.length);
+            invalid = session.putAttribute(invalid, "InvalidOffset", Long.toString(invalidRecord.offset));
+            invalid = session.putAttribute(invalid, "InvalidReason", String.valueOf(invalidRecord.reason.getMessage()));
+            session.transfer(invalid, INVALID);
+        }
+    }
 
-            logger.info("Parse completed. Record Count: " + recordCount);
-            csvFlowFile = session.putAttribute(csvFlowFile, "RecordCount", Integer.toString(recordCount));
-            session.transfer(csvFlowFile, SUCCESS);
-            session.remove(flowFile);
+    /*
+     * Columns and data types of a binary FlowFile, for the consumer to decode the rows with.
+     */
+    private static FlowFile putSchemaAttributes(final ProcessSession session, FlowFile flowFile, ASN1Schema schema) {
+        StringBuilder columns = new StringBuilder();
+        StringBuilder dataTypes = new StringBuilder();
+        for (int i = 0; i < schema.getColumnCount(); i++) {
+            if (i > 0) {
+                columns.append(',');
+                dataTypes.append(',');
+            }
+            columns.append(schema.getHeader(i).getHeaderName());
+            dataTypes.append(schema.getDataType(i).name());
+        }
+        flowFile = session.putAttribute(flowFile, "Schema", columns.toString());
+        return session.putAttribute(flowFile, "DataTypes", dataTypes.toString());
+    }
 
-            logger.info("Committing flowfile.");
-            session.commit();
-            logger.info("Flowfile commit successfull.");
-        } catch (Exception e) {
-            logger.severe("ASN.1 Error while parsing.");
-            session.transfer(flowFile, FAILURE);
-            session.remove(csvFlowFile);
-            session.commit();
-            throw new ProcessException(e.getCause());
+    private ASN1ParseMetrics parse(final ProcessSession session, FlowFile flowFile, FlowFile[] csvFlowFiles,
+                                   long[] recordCounts, Decoder decoder) throws Exception {
+        OutputStream[] outputs = new OutputStream[csvFlowFiles.length];
+        StreamBERReader reader = decoder.reader;
+        decoder.invalidRecords.clear();
+        InputStream content = session.read(flowFile);
+        try {
+            InputStream input = inputCompression.decompress(content);
+            reader.reset(pipelineBuffers > 0
+                    ? new ReadAheadInputStream(input, ReadAheadInputStream.DEFAULT_BLOCK_SIZE, pipelineBuffers) : input);
+        } catch (IOException e) {
+            close(e, content);
+            throw e;
+        }
+        Throwable failure = null;
+        try {
+            for (int table = 0; table < outputs.length; table++) {
+                OutputStream output = outputCompression.compress(session.write(csvFlowFiles[table]), compressionLevel);
+                outputs[table] = pipelineBuffers > 0
+                        ? new WriteBehindOutputStream(output, ReadAheadInputStream.DEFAULT_BLOCK_SIZE, pipelineBuffers)
+                        : new BufferedOutputStream(output, bufferSize);
+            }
+            if (parallelParser != null) {
+                decoder.metrics.reset();
+                recordCounts[0] = parallelParser.parse(reader, outputs[0], decoder.metrics);
+                return decoder.metrics;
+            }
+            decoder.parser.reset(reader);
+            if (parquetCompression != null)
+                writeParquet(decoder.parser, outputs);
+            else
+                decoder.parser.parse(outputs);
+            for (int table = 0; table < outputs.length; table++)
+                recordCounts[table] = decoder.parser.getRecordCount(table);
+            return decoder.parser.getMetrics();
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
         } finally {
+            Closeable[] streams = new Closeable[outputs.length + 1];
+            streams[0] = reader;
+            System.arraycopy(outputs, 0, streams, 1, outputs.length);
+            close(failure, streams);
+        }
+    }
+
+    /*
+     * Closes every stream even when one fails. After a failed parse the close errors are added to
+     * it as suppressed, so they do not replace it, otherwise the first close error is thrown.
+     */
+    private static void close(Throwable failure, Closeable... streams) throws IOException {
+        IOException closeError = null;
+        for (Closeable stream : streams) {
+            if (stream == null)
+                continue;
             try {
-                bis.close();
-                bos.close();
-            } catch (IOException e){
-                throw new ProcessException(e.getCause());
+                stream.close();
+            } catch (IOException | RuntimeException e) {
+                if (failure != null)
+                    failure.addSuppressed(e);
+                else if (closeError == null)
+                    closeError = e instanceof IOException ? (IOException) e : new IOException(e);
+                else
+                    closeError.addSuppressed(e);
             }
         }
+        if (closeError != null)
+            throw closeError;
+    }
+
+    /*
+     * Walks the records with the parser and writes the rows of each table with its own Parquet writer.
+     * With Skip Invalid Records the cells of a record are checked first, so a record that cannot be
+     * written is routed to Invalid without leaving part of a row in the writer.
+     */
+    private void writeParquet(ASN1CSVParser parser, OutputStream[] outputs) throws Exception {
+        ASN1Schema[] tableSchemas = this.tableSchemas;
+        ParquetRecordWriter[] writers = new ParquetRecordWriter[outputs.length];
+        for (int table = 0; table < outputs.length; table++)
+            writers[table] = new ParquetRecordWriter(tableSchemas[table], outputs[table], parquetCompression);
+        while (parser.nextRecord()) {
+            long start = System.nanoTime();
+            if (parser.isLenient()) {
+                try {
+                    for (int table = 0; table < writers.length; table++)
+                        writers[table].check(parser.getRecordSet(table));
+                } catch (IllegalArgumentException e) {
+                    parser.invalidateRecord(e);
+                    continue;
+                }
+            }
+            for (int table = 0; table < writers.length; table++)
+                writers[table].write(parser.getRecordSet(table));
+            parser.getMetrics().addWriteNanos(System.nanoTime() - start);
+        }
+        long start = System.nanoTime();
+        for (ParquetRecordWriter writer : writers)
+            writer.close();
+        parser.getMetrics().addWriteNanos(System.nanoTime() - start);
+    }
+
+    /*
+     * Adds the metrics to the processor's counters, which reporting tasks and monitoring outside
+     * NiFi read at /nifi-api/counters.
+     */
+    private void publish(final ProcessSession session, ASN1ParseMetrics metrics) {
+        session.adjustCounter("ASN.1 TLVs", metrics.getTlvs(), false);
+        session.adjustCounter("ASN.1 Primitives Captured", metrics.getCapturedPrimitives(), false);
+        session.adjustCounter("ASN.1 Primitives Skipped", metrics.getSkippedPrimitives(), false);
+        session.adjustCounter("ASN.1 Blocks Skipped", metrics.getSkippedBlocks(), false);
+        session.adjustCounter("ASN.1 Bytes Read", metrics.getBytesRead(), false);
+        session.adjustCounter("ASN.1 Records", metrics.getRecords(), false);
+        session.adjustCounter("ASN.1 Invalid Records", metrics.getInvalidRecords(), false);
+        session.adjustCounter("ASN.1 Decode Cache Hits", metrics.getCacheHits(), false);
+        session.adjustCounter("ASN.1 Decode Cache Misses", metrics.getCacheMisses(), false);
+        session.adjustCounter("ASN.1 Walk Time (ms)", metrics.getWalkNanos() / 1000000, false);
+        session.adjustCounter("ASN.1 Build Time (ms)", metrics.getBuildNanos() / 1000000, false);
+        session.adjustCounter("ASN.1 Write Time (ms)", metrics.getWriteNanos() / 1000000, false);
     }
-}
 
+    /*
+     * Reader buffer and parser state of one concurrent task.
+     */
+    private static class Decoder {
+        final StreamBERReader reader;
+        final ASN1CSVParser parser;
+        final ASN1ParseMetrics metrics = new ASN1ParseMetrics();
+        final List<InvalidRecord> invalidRecords = new ArrayList<>();
 
+        Decoder(ASN1Schema schema, ASN1SchemaSet schemaSet, int bufferSize, int spillThreshold, boolean binaryOutput,
+                boolean skipInvalidRecords, ASN1Filter filter, ComponentLog logger) {
+            reader = new StreamBERReader(null, bufferSize);
+            parser = schemaSet == null
+                    ? new ASN1CSVParser(reader, schema, logger) : new ASN1CSVParser(reader, schemaSet, logger);
+            parser.setSpillThreshold(spillThreshold);
+            parser.setBinaryOutput(binaryOutput);
+            parser.setFilter(filter);
+            if (skipInvalidRecords)
+                parser.setInvalidRecordListener((offset, length, reason) ->
+                        invalidRecords.add(new InvalidRecord(offset, length, reason)));
+        }
+    }
+
+    private static class InvalidRecord {
+        final long offset;
+        final long length;
+        final Exception reason;
+
+        InvalidRecord(long offset, long length, Exception reason) {
+            this.offset = offset;
+            this.length = length;
+            this.reason = reason;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.bonyansystem.processors.asn1;
+
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnEnabled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.controller.AbstractControllerService;
+import org.apache.nifi.controller.ConfigurationContext;
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.reporting.InitializationException;
+import org.apache.nifi.serialization.RecordReader;
+import org.apache.nifi.serialization.RecordReaderFactory;
+import org.apache.nifi.serialization.record.RecordSchema;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+@Tags({"ASN1Processor", "ASN.1", "BER", "record", "reader"})
+@CapabilityDescription("Reads ASN.1 BER content as records with the same CSV Schema and Data Types as ASN1Processor. " +
+        "INTEGER columns are read as long, BOOLEAN as boolean and the other types as the text ASN1Processor writes, " +
+        "except IA5_STRING which is not quoted.")
+public class ASN1ReaderService extends AbstractControllerService implements RecordReaderFactory {
+    public static final PropertyDescriptor FIELD_NAMES = new PropertyDescriptor
+            .Builder().name("FIELD_NAMES")
+            .displayName("Field Names")
+            .description("Comma separated record field names, one per CSV Schema column. When empty the column " +
+                    "addresses are used with '.' replaced by '_', '*' by 'x' and an 'f' prefix, e.g. 79.19.*.1 is f79_19_x_1.")
+            .required(false)
+            .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+            .build();
+
+    private static final List<PropertyDescriptor> descriptors;
+
+    static {
+        final List<PropertyDescriptor> list = new ArrayList<PropertyDescriptor>();
+        list.add(ASN1Processor.CSV_SCHEMA);
+        list.add(ASN1Processor.DATA_TYPES);
+        list.add(FIELD_NAMES);
+        list.add(ASN1Processor.BUFFER_SIZE);
+        descriptors = Collections.unmodifiableList(list);
+    }
+
+    private volatile ASN1Schema schema;
+    private volatile RecordSchema recordSchema;
+    private volatile int bufferSize;
+
+    @Override
+    protected List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return descriptors;
+    }
+
+    @Override
+    protected Collection<ValidationResult> customValidate(final ValidationContext context) {
+        if (context.getProperty(ASN1Processor.CSV_SCHEMA).getValue() == null
+                || context.getProperty(ASN1Processor.DATA_TYPES).getValue() == null)
+            return Collections.emptyList();
+        try {
+            ASN1Schema schema = new ASN1Schema(context.getProperty(ASN1Processor.CSV_SCHEMA).getValue(),
+                    context.getProperty(ASN1Processor.DATA_TYPES).getValue());
+            ASN1RecordReader.createRecordSchema(schema, context.getProperty(FIELD_NAMES).getValue());
+        } catch (Exception e) {
+            return Collections.singletonList(new ValidationResult.Builder()
+                    .subject(ASN1Processor.CSV_SCHEMA.getDisplayName())
+                    .valid(false)
+                    .explanation(String.valueOf(e.getMessage()))
+                    .build());
+        }
+        return Collections.emptyList();
+    }
+
+    @OnEnabled
+    public void onEnabled(final ConfigurationContext context) throws InitializationException {
+        try {
+            schema = new ASN1Schema(context.getProperty(ASN1Processor.CSV_SCHEMA).getValue(),
+                    context.getProperty(ASN1Processor.DATA_TYPES).getValue());
+            recordSchema = ASN1RecordReader.createRecordSchema(schema, context.getProperty(FIELD_NAMES).getValue());
+        } catch (Exception e) {
+            throw new InitializationException("Invalid ASN.1 schema.", e);
+        }
+        bufferSize = context.getProperty(ASN1Processor.BUFFER_SIZE).asInteger() * 1024;
+    }
+
+    @Override
+    public RecordReader createRecordReader(Map<String, String> variables, InputStream in, long inputLength, ComponentLog logger) {
+        return new ASN1RecordReader(new StreamBERReader(in, bufferSize), schema, recordSchema,
+                logger == null ? getLogger() : logger);
+    }
+}
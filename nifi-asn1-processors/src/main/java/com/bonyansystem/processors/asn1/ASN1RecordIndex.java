@@ -0,0 +1,63 @@
+package com.bonyansystem.processors.asn1;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/*
+ * Start and end offsets of the top level records of an input, found by reading only the tag and
+ * length of each record and skipping its content. A range of records runs from the start of its
+ * first record to the end of its last, so bytes after the last record are never part of it.
+ */
+public class ASN1RecordIndex {
+    private long[] starts = new long[1024];
+    private long[] ends = new long[1024];
+    private int recordCount;
+
+    public static ASN1RecordIndex build(BERReader reader) throws IOException {
+        ASN1RecordIndex index = new ASN1RecordIndex();
+        ASN1RecordScanner scanner = new ASN1RecordScanner(reader, false);
+        while (scanner.next()) {
+            scanner.skipContent();
+            index.add(scanner.getRecordOffset(), scanner.getRecordOffset() + scanner.getRecordLength());
+        }
+        return index;
+    }
+
+    void add(long start, long end) {
+        if (recordCount == starts.length) {
+            starts = Arrays.copyOf(starts, starts.length * 2);
+            ends = Arrays.copyOf(ends, ends.length * 2);
+        }
+        starts[recordCount] = start;
+        ends[recordCount++] = end;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public long getOffset(int record) {
+        return starts[record];
+    }
+
+    /*
+     * Bytes from the start of record from to the end of record to - 1.
+     */
+    public long getLength(int from, int to) {
+        return ends[to - 1] - starts[from];
+    }
+
+    /*
+     * End record (exclusive) of the split starting at record from, holding at most maxRecords
+     * records and maxBytes bytes but at least one record. 0 leaves a limit out.
+     */
+    public int nextSplit(int from, int maxRecords, long maxBytes) {
+        int to = maxRecords > 0 ? Math.min(recordCount, from + maxRecords) : recordCount;
+        if (maxBytes > 0) {
+            // records ending within maxBytes
+            int last = Arrays.binarySearch(ends, from, to, starts[from] + maxBytes);
+            to = Math.max(from + 1, last < 0 ? -last - 1 : last + 1);
+        }
+        return to;
+    }
+}
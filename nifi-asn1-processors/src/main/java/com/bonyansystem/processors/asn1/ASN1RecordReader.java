@@ -0,0 +1,168 @@
+package com.bonyansystem.processors.asn1;
+
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.serialization.MalformedRecordException;
+import org.apache.nifi.serialization.RecordReader;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Reads the rows of the BER walk as NiFi records. Cells are converted to typed values straight
+ * from their value bytes, INTEGER to long and BOOLEAN to boolean, without going through CSV text.
+ */
+public class ASN1RecordReader implements RecordReader {
+    private final BERReader reader;
+    private final ASN1CSVParser parser;
+    private final ASN1RecordSet recordSet;
+    private final RecordSchema recordSchema;
+    private final DataType[] dataTypes;
+    private final String[] fieldNames;
+    private final ByteSink text = new ByteSink(64);
+    private int row;
+
+    public ASN1RecordReader(BERReader reader, ASN1Schema schema, RecordSchema recordSchema) {
+        this(reader, schema, recordSchema, JulComponentLog.DEFAULT);
+    }
+
+    public ASN1RecordReader(BERReader reader, ASN1Schema schema, RecordSchema recordSchema, ComponentLog logger) {
+        this.reader = reader;
+        this.parser = new ASN1CSVParser(reader, schema, logger);
+        this.recordSet = parser.getRecordSet();
+        this.recordSchema = recordSchema;
+        this.dataTypes = new DataType[schema.getColumnCount()];
+        this.fieldNames = new String[schema.getColumnCount()];
+        for (int i = 0; i < dataTypes.length; i++) {
+            dataTypes[i] = schema.getDataType(i);
+            fieldNames[i] = recordSchema.getField(i).getFieldName();
+        }
+    }
+
+    /*
+     * Record schema of the CSV schema columns, named by fieldNames or, when it is empty, by the
+     * column addresses made into valid names (79.19.*.1 becomes f79_19_x_1).
+     */
+    public static RecordSchema createRecordSchema(ASN1Schema schema, String fieldNames) throws Exception {
+        String[] names;
+        if (fieldNames == null || fieldNames.trim().isEmpty()) {
+            names = new String[schema.getColumnCount()];
+            for (int i = 0; i < names.length; i++)
+                names[i] = toFieldName(schema.getHeader(i).getHeaderName());
+        } else {
+            names = fieldNames.split(",");
+            if (names.length != schema.getColumnCount())
+                throw new Exception("Field names count does not match the CSV schema.");
+        }
+
+        Set<String> unique = new HashSet<>();
+        List<RecordField> fields = new ArrayList<>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i].trim();
+            if (!unique.add(name))
+                throw new Exception("Duplicate field name: " + name);
+            fields.add(new RecordField(name, toFieldType(schema.getDataType(i)).getDataType(), true));
+        }
+        return new SimpleRecordSchema(fields);
+    }
+
+    static String toFieldName(String header) {
+        StringBuilder name = new StringBuilder(header.length() + 1);
+        char first = header.charAt(0);
+        if (!(first >= 'A' && first <= 'Z' || first >= 'a' && first <= 'z' || first == '_'))
+            name.append('f');
+        for (int i = 0; i < header.length(); i++) {
+            char c = header.charAt(i);
+            if (c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '_')
+                name.append(c);
+            else if (c == '*')
+                name.append('x');
+            else
+                name.append('_');
+        }
+        return name.toString();
+    }
+
+    static RecordFieldType toFieldType(DataType dataType) {
+        switch (dataType) {
+            case INTEGER:
+                return RecordFieldType.LONG;
+            case BOOLEAN:
+                return RecordFieldType.BOOLEAN;
+            default:
+                return RecordFieldType.STRING;
+        }
+    }
+
+    @Override
+    public Record nextRecord(boolean coerceTypes, boolean dropUnknownFields) throws IOException, MalformedRecordException {
+        int current;
+        try {
+            while (row >= recordSet.getRowCount()) {
+                if (!parser.nextRecord())
+                    return null;
+                row = 0;
+            }
+            current = row++;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MalformedRecordException("ASN.1 parse error: " + e.getMessage(), e);
+        }
+
+        Map<String, Object> values = new LinkedHashMap<>(fieldNames.length * 2);
+        for (int i = 0; i < fieldNames.length; i++) {
+            int length = recordSet.cellLength(current, i);
+            values.put(fieldNames[i], length < 0 ? null
+                    : toValue(recordSet.cellData(current, i), recordSet.cellOffset(current, i), length, i));
+        }
+        return new MapRecord(recordSchema, values);
+    }
+
+    private Object toValue(byte[] data, int offset, int length, int col) throws MalformedRecordException {
+        switch (dataTypes[col]) {
+            case INTEGER:
+                if (length == 0 || length > 8)
+                    throw new MalformedRecordException("INTEGER of " + length + " bytes does not fit in a long. field=" + fieldNames[col]);
+                long value = data[offset]; // sign extended
+                for (int i = offset + 1; i < offset + length; i++)
+                    value = (value << 8) | (data[i] & 0xff);
+                return value;
+            case BOOLEAN:
+                if (length == 0)
+                    throw new MalformedRecordException("Invalid BOOLEAN data. field=" + fieldNames[col]);
+                return data[offset] == (byte) 0xff;
+            case IA5_STRING:
+                return new String(data, offset, length, StandardCharsets.UTF_8);
+            default:
+                try {
+                    text.reset();
+                    dataTypes[col].getCodec().encode(data, offset, length, text);
+                } catch (Exception e) {
+                    throw new MalformedRecordException(e.getMessage() + " field=" + fieldNames[col], e);
+                }
+                return new String(text.buf, 0, text.size(), StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Override
+    public RecordSchema getSchema() {
+        return recordSchema;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
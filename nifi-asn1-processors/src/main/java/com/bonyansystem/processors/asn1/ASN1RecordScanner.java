@@ -0,0 +1,117 @@
+package com.bonyansystem.processors.asn1;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/*
+ * Reads only the tag and length of each top level TLV, so record boundaries can be found
+ * without walking the record content.
+ */
+public class ASN1RecordScanner {
+    private static final int MAX_HEADER_LENGTH = 16;
+    private final BERReader reader;
+    private final boolean copyIndefinite;
+    private final byte[] header = new byte[MAX_HEADER_LENGTH];
+    private int headerLength;
+    private int contentLength;
+    private long recordOffset;
+    private ByteSink indefiniteContent;
+    private boolean indefinite;
+
+    public ASN1RecordScanner(BERReader reader) {
+        this(reader, true);
+    }
+
+    /*
+     * Without copyIndefinite the content of indefinite length records is only skipped, which keeps
+     * memory flat for callers that never copy records, but copyRecord then fails for them.
+     */
+    public ASN1RecordScanner(BERReader reader, boolean copyIndefinite) {
+        this.reader = reader;
+        this.copyIndefinite = copyIndefinite;
+    }
+
+    /*
+     * Reads the header of the next top level record, false at end of input.
+     * The reader is left at the start of the record content.
+     */
+    public boolean next() throws IOException {
+        if (!reader.hasRemaining())
+            return false;
+
+        recordOffset = reader.position();
+        headerLength = 0;
+        int b = readHeaderByte();
+        if ((b & 0x1f) == 0x1f) {
+            do {
+                b = readHeaderByte();
+            } while ((b & 0x80) != 0 && headerLength < 6);
+            if ((b & 0x80) != 0)
+                throw new IOException("corrupted stream - tag number too long. pos: " + recordOffset);
+        }
+
+        int length = readHeaderByte();
+        indefinite = length == 0x80;
+        if (indefinite && !copyIndefinite) {
+            long start = reader.position();
+            reader.skipIndefinite(null);
+            contentLength = (int) (reader.position() - start);
+            return true;
+        }
+        if (indefinite) {
+            // the length is only known once the end-of-contents is found, so the content is read here
+            if (indefiniteContent == null)
+                indefiniteContent = new ByteSink(MAX_HEADER_LENGTH);
+            indefiniteContent.reset();
+            reader.skipIndefinite(indefiniteContent);
+            contentLength = indefiniteContent.size();
+            return true;
+        }
+        if (length > 127) {
+            int size = length & 0x7f;
+            if (size > 4)
+                throw new IOException("DER length more than 4 bytes: " + size);
+            length = 0;
+            for (int i = 0; i < size; i++)
+                length = (length << 8) + readHeaderByte();
+            if (length < 0)
+                throw new IOException("corrupted stream - negative length found");
+        }
+        contentLength = length;
+        return true;
+    }
+
+    private int readHeaderByte() throws IOException {
+        int b = reader.read();
+        if (b < 0)
+            throw new EOFException("EOF found inside record header. pos: " + recordOffset);
+        header[headerLength++] = (byte) b;
+        return b;
+    }
+
+    /*
+     * Copies the whole current record, header included, into dst.
+     */
+    public void copyRecord(byte[] dst, int offset) throws IOException {
+        if (indefinite && !copyIndefinite)
+            throw new IllegalStateException("Indefinite length record content was not kept. pos: " + recordOffset);
+        System.arraycopy(header, 0, dst, offset, headerLength);
+        if (indefinite)
+            System.arraycopy(indefiniteContent.buf, 0, dst, offset + headerLength, contentLength);
+        else
+            reader.readFully(dst, offset + headerLength, contentLength);
+    }
+
+    public void skipContent() throws IOException {
+        if (!indefinite)
+            reader.skip(contentLength);
+    }
+
+    public long getRecordOffset() {
+        return recordOffset;
+    }
+
+    public int getRecordLength() {
+        return headerLength + contentLength;
+    }
+}
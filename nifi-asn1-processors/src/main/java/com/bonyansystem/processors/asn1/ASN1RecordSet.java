@@ -1,125 +1,456 @@
 package com.bonyansystem.processors.asn1;
 
-import java.io.BufferedOutputStream;
-import java.math.BigInteger;
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
+import org.apache.nifi.logging.ComponentLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
-import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-public class ASN1RecordSet extends ArrayList<byte[][]> {
-    static Logger logger = Logger.getLogger("com.bonyansystem");
-    private Map<String, ASN1Header> headerMap; //last cell filled in a column
-    private byte[][] masterRow;
-    private DataType[] dataTypes;
-    //private final String iterationTag;
-    private int columnCount;
+
+/*
+ * Rows of one top level record as a reusable columnar arena. Cell values are slices addressed by
+ * per column offset and length arrays indexed by row, and REC_NO, SUB_SEQ and MULTI_RECORD are
+ * computed from the row number. Once the arrays have grown to the largest record nothing is
+ * allocated per record.
+ *
+ * A slice is either a view into the input array of the reader, when it has one, or a copy in the
+ * slab. Slab offsets are stored complemented, so a negative offset is a slab cell.
+ *
+ * With a spill threshold, rows beyond it are written to a temp file and the arrays hold only the
+ * rows since the last spill. Iterated values arriving for a spilled row are kept as patches, and
+ * master and explicit sequence cells are applied to spilled rows as they are read back on write.
+ * Once there are as many patches as cells in the rows kept in memory they are spilled as well, so
+ * a record with several large iterated containers is bounded like one with a single container.
+ *
+ * Rows are written as CSV text, or in the binary row format for consumers that decode the
+ * values themselves: the row length as a varint, a presence bitmap with bit i (low bit first)
+ * set when column i has a value, then the present cells in column order. INTEGER cells are a
+ * zigzag varint of the value, all other cells are their length as a varint followed by the raw
+ * bytes, so TBCD, octet and address values are passed through undecoded.
+ *
+ * With a filter the rows failing it are dropped right after they are built and the kept rows are
+ * moved up, SUB_SEQ still numbering them by their place in the record.
+ */
+public class ASN1RecordSet implements Closeable {
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes();
+    private static final int NO_VALUE = -1;
+    private static final int SUB_SEQ = 1;
+    private static final int REC_NO = 2;
+    private static final int MULTI_RECORD = 3;
+
+    private final ASN1Schema schema;
+    private final ComponentLog logger;
+    private final int columnCount;
+    private final DataType[] dataTypes;
+    private final DataTypeCodec[] codecs;
+    private final int[] synthetic; //SUB_SEQ, REC_NO, MULTI_RECORD or 0 per column
+    private final int[] explicitSequences;
+    private final int[] currentRows; //next row to fill in each iterated column
+    private final int[] masterOffsets;
+    private final int[] masterLengths;
+    private final int[] masterColumns;
+    private final int[] explicitOffsets; //explicit sequence value when its row is spilled
+    private final int[] explicitLengths;
+    private final boolean[] explicitFilled; //columns filled from their explicit sequence row
+    private final boolean[] spilledColumns; //columns with a value in a spilled row
+    private int[][] offsets; //[column][row - spilledRows]
+    private int[][] lengths; //[column][row - spilledRows], NO_VALUE for an empty cell
+    private int rowCapacity = 16;
+    private int rowCount;
+    private int spillThreshold;
+    private int spilledRows;
+    private RowSpill spill;
+    private int[] patches = new int[64]; //row, column, offset, length of values for spilled rows not yet spilled
+    private int patchCount;
+    private byte[] spare = new byte[0];
+    private byte[] slab = new byte[4096];
+    private int slabSize;
+    private byte[] input; //backing array of the reader the views point into
+    private int initialRecordNum;
+    private ChunkOutput recordNumberOutput;
+    private ByteSink sink;
+    private final byte[] intCell = new byte[4];
+    private ByteSink binaryRow; //null for CSV output
+    private ASN1Filter filter;
+    private final ByteSink filterScratch = new ByteSink(64);
+    private int[] sourceRows = new int[0]; //row in the record of each kept row
+    private boolean rejected; //a master value failed the filter
+    private boolean multiRecord;
 
     public ASN1RecordSet(String recordSchema, String schemaDataTypes) throws Exception {
-        initHeaderMap(recordSchema);
+        this(new ASN1Schema(recordSchema, schemaDataTypes));
+    }
 
-        this.masterRow = new byte[headerMap.size()][];
-        this.columnCount = headerMap.size();
-        this.dataTypes = new DataType[columnCount];
+    public ASN1RecordSet(ASN1Schema schema) {
+        this(schema, JulComponentLog.DEFAULT);
+    }
 
-        setSchemaDataTypes(schemaDataTypes);
-    }
-
-    private void initHeaderMap(String recordSchema) throws Exception {
-        headerMap = new HashMap<>();
-        int explicitSequence;
-        int colNum = 0;
-        Pattern pattern = Pattern.compile("\\[\\d*\\]");
-
-        for (String s : recordSchema.split(",")) {
-            Matcher matcher = pattern.matcher(s);
-            String seqStr = "";
-            explicitSequence = -1;
-            if (matcher.find()) {
-                seqStr = matcher.group(0);
-                explicitSequence = Integer.parseInt(seqStr
-                        .replace("[", "")
-                        .replace("]", ""));
-                s = s.replace(seqStr, "");
-                logger.finest("Found explicit sequence column: " + s + " Sequence: " + explicitSequence);
-            }
-            ASN1Header header = new ASN1Header();
-            header.setHeaderName(s);
-            header.setCurrentRow(0);
-            header.setExplicitSequence(explicitSequence);
-            header.setColNum(colNum);
-            headerMap.put(s, header);
-            colNum++;
+    public ASN1RecordSet(ASN1Schema schema, ComponentLog logger) {
+        this.schema = schema;
+        this.logger = logger;
+        this.columnCount = schema.getColumnCount();
+        this.dataTypes = new DataType[columnCount];
+        this.codecs = new DataTypeCodec[columnCount];
+        this.synthetic = new int[columnCount];
+        this.explicitSequences = new int[columnCount];
+        this.currentRows = new int[columnCount];
+        this.masterOffsets = new int[columnCount];
+        this.masterLengths = new int[columnCount];
+        this.masterColumns = new int[columnCount];
+        this.explicitOffsets = new int[columnCount];
+        this.explicitLengths = new int[columnCount];
+        this.explicitFilled = new boolean[columnCount];
+        this.spilledColumns = new boolean[columnCount];
+        this.offsets = new int[columnCount][rowCapacity];
+        this.lengths = new int[columnCount][rowCapacity];
+
+        for (int i = 0; i < columnCount; i++) {
+            this.dataTypes[i] = schema.getDataType(i);
+            this.codecs[i] = schema.getCacheSize(i) > 0
+                    ? new DecodeCache(dataTypes[i].getCodec(), schema.getCacheSize(i)) : dataTypes[i].getCodec();
+            this.explicitSequences[i] = schema.getHeader(i).getExplicitSequence();
         }
+        markSynthetic(ASN1Schema.SUB_SEQ, SUB_SEQ);
+        markSynthetic(ASN1Schema.REC_NO, REC_NO);
+        markSynthetic(ASN1Schema.MULTI_RECORD, MULTI_RECORD);
+        Arrays.fill(masterLengths, NO_VALUE);
+        Arrays.fill(explicitLengths, NO_VALUE);
+    }
+
+    private void markSynthetic(String header, int kind) {
+        int colNum = schema.getHeaderNum(header);
+        if (colNum != ASN1SchemaNode.NO_COLUMN)
+            synthetic[colNum] = kind;
+    }
+
+    public ASN1Schema getSchema() {
+        return schema;
+    }
+
+    /*
+     * Leaves REC_NO cells out of the written rows and marks their place in the chunk instead.
+     */
+    void setRecordNumberOutput(ChunkOutput recordNumberOutput) {
+        this.recordNumberOutput = recordNumberOutput;
+    }
+
+    /*
+     * Rows of one top level record kept in memory, further rows are spilled to a temp file.
+     * 0 keeps every row in memory. Spilled rows can only be written, not read back by cell, so
+     * a threshold cannot be set together with a filter.
+     */
+    public void setSpillThreshold(int rows) {
+        if (rows > 0 && filter != null)
+            throw new IllegalStateException("Rows cannot be spilled when a filter is set.");
+        this.spillThreshold = rows;
+    }
+
+    /*
+     * Writes rows in the binary row format instead of CSV text.
+     */
+    public void setBinaryOutput(boolean binary) {
+        binaryRow = binary ? new ByteSink(256) : null;
+    }
+
+    /*
+     * Keeps only the rows passing filter. Not supported together with a spill threshold.
+     */
+    public void setFilter(ASN1Filter filter) {
+        if (filter != null && spillThreshold > 0)
+            throw new IllegalStateException("A filter cannot be set when rows are spilled.");
+        this.filter = filter;
+    }
+
+    /*
+     * True once a master value of the current record failed the filter, no row of it is kept.
+     */
+    boolean isRejected() {
+        return rejected;
     }
 
     public void purge() {
-        Arrays.fill(masterRow, null);
-        for (Map.Entry e : headerMap.entrySet())
-            ((ASN1Header) e.getValue()).setCurrentRow(0);
-        this.clear();
+        rejected = false;
+        Arrays.fill(masterLengths, NO_VALUE);
+        Arrays.fill(currentRows, 0);
+        rowCount = 0;
+        slabSize = 0;
+        input = null;
+        Arrays.fill(explicitLengths, NO_VALUE);
+        if (spilledRows > 0) {
+            Arrays.fill(spilledColumns, false);
+            spilledRows = 0;
+            patchCount = 0;
+        }
     }
 
-    public void setSchemaDataTypes(String schemaDataTypes) throws Exception {
-        String[] dataTypesRaw = schemaDataTypes.split(",");
-        if (dataTypesRaw.length != columnCount)
-            throw new Exception("Invalid data types string.");
+    /*
+     * Deletes the spill file, if any.
+     */
+    @Override
+    public void close() throws IOException {
+        if (spill != null) {
+            spill.close();
+            spill = null;
+        }
+    }
 
-        for (int i = 0; i < columnCount; i++)
-            this.dataTypes[i] = DataType.valueOf(dataTypesRaw[i]);
+    /*
+     * Drops the rows and any output not yet written, the output buffer is kept for the next input.
+     */
+    void reset() {
+        purge();
+        if (sink != null)
+            sink.reset();
     }
 
     public int getHeaderNum(String header) throws Exception {
-        return headerMap.get(header).getColNum();
+        if (!schema.hasHeader(header))
+            throw new Exception("Header is not defined in schema: " + header);
+        return schema.getHeaderNum(header);
     }
 
     public boolean hasHeader(String header) {
-        return headerMap.containsKey(header);
+        return schema.hasHeader(header);
+    }
+
+    public int getRowCount() {
+        return rowCount;
     }
 
     public void populateColumn(String header, byte[] value) throws Exception {
         int num = getHeaderNum(header);
-        for (byte[][] b : this)
-            b[num] = value;
-        if (this.size() < 1)
+        checkNotSpilled();
+        int offset = store(value, 0, value.length);
+        for (int row = 0; row < rowCount; row++) {
+            offsets[num][row] = offset;
+            lengths[num][row] = value.length;
+        }
+        if (rowCount < 1)
             throw new Exception("No record is available.");
     }
 
-    private void populateMasterCell(String tag, byte[] value) throws Exception {
-        int num = getHeaderNum(tag);
+    private void populateMasterCell(int num, int offset, int length) throws Exception {
+        if (masterLengths[num] == NO_VALUE) {
+            masterOffsets[num] = offset;
+            masterLengths[num] = length;
+            if (filter != null && filter.rejects(num, source(offset), index(offset), length, filterScratch))
+                rejected = true;
+        } else
+            throw new Exception("Master cell is not empty. header=" + schema.getHeader(num).getHeaderName() + " col=" + num);
+    }
 
-        if (masterRow[num] == null)
-            masterRow[num] = value;
+    private void populateIteratedCell(int currentCol, int offset, int length) throws Exception {
+        int currentRow = currentRows[currentCol];
+        if (currentRow < spilledRows) {
+            addPatch(currentRow, currentCol, offset, length);
+            currentRows[currentCol] = ++currentRow;
+            return;
+        }
+        int row = currentRow - spilledRows;
+        if (lengths[currentCol][row] == NO_VALUE) {
+            offsets[currentCol][row] = offset;
+            lengths[currentCol][row] = length;
+            currentRows[currentCol] = ++currentRow;
+        } else {
+            Exception e = new Exception("Trying to overwrite iterated cell.");
+            logger.error("Populating iterated cell. col=" + currentCol, e);
+            throw e;
+        }
+    }
+
+    private void populateCell(int colNum, boolean iterated, int offset, int length) throws Exception {
+        if (iterated)
+            populateIteratedCell(colNum, offset, length);
         else
-            throw new Exception("Master cell is not empty. header=" + tag + " col=" + num);
+            populateMasterCell(colNum, offset, length);
     }
 
-    private void populateIteratedCell(String tag, byte[] value) throws Exception {
-        try {
-            int currentCol = getHeaderNum(tag);
-            int currentRow = headerMap.get(tag).getCurrentRow();
-            if (currentRow + 1 > this.size())
-                addEmptyRow();
-
-            if (get(currentRow)[currentCol] == null) {
-                get(currentRow)[currentCol] = value;
-                headerMap.get(tag).setCurrentRow(++currentRow);
-            } else
-                throw new Exception("Trying to overwrite iterated cell.");
-        } catch (Exception e) {
-            logger.severe("ERROR: Populating iterated cell.");
-            e.printStackTrace();
-            throw e;
+    /*
+     * Adds the row the next value of an iterated column goes to. This is done before the value is
+     * stored, as adding a row can spill and compact the slab.
+     */
+    private void addRowFor(int colNum, boolean iterated) throws IOException {
+        if (iterated && currentRows[colNum] + 1 > rowCount)
+            addEmptyRow();
+    }
+
+    public void populateCell(int colNum, boolean iterated, byte[] value) throws Exception {
+        populateCell(colNum, iterated, value, 0, value.length);
+    }
+
+    /*
+     * Captures a copy of length bytes of data from offset.
+     */
+    public void populateCell(int colNum, boolean iterated, byte[] data, int offset, int length) throws Exception {
+        addRowFor(colNum, iterated);
+        populateCell(colNum, iterated, store(data, offset, length), length);
+    }
+
+    /*
+     * Captures a primitive value of length bytes from the reader. The bytes are not copied when
+     * the reader is backed by an array, otherwise they are read straight into the slab.
+     */
+    public void populateCell(int colNum, boolean iterated, BERReader reader, int length) throws Exception {
+        addRowFor(colNum, iterated);
+        byte[] array = reader.backingArray();
+        if (array != null) {
+            input = array;
+            populateCell(colNum, iterated, reader.readSlice(length), length);
+            return;
         }
+        int at = reserve(length);
+        reader.readFully(slab, at, length);
+        slabSize += length;
+        populateCell(colNum, iterated, ~at, length);
     }
 
     public void populateCell(String tag, byte[] value) throws Exception {
-        if (tag.contains("*")) {
-            populateIteratedCell(tag, value);
-        } else
-            populateMasterCell(tag, value);
+        populateCell(getHeaderNum(tag), tag.contains("*"), value);
+    }
+
+    private int store(byte[] value, int offset, int length) {
+        int at = reserve(length);
+        System.arraycopy(value, offset, slab, at, length);
+        slabSize += length;
+        return ~at;
+    }
+
+    private int reserve(int length) {
+        if (length > slab.length - slabSize)
+            slab = Arrays.copyOf(slab, Math.max(slab.length * 2, slabSize + length));
+        return slabSize;
+    }
+
+    public void addEmptyRow() throws IOException {
+        if (spillThreshold > 0 && rowCount - spilledRows == spillThreshold)
+            spill();
+        int row = rowCount - spilledRows;
+        if (row == rowCapacity) {
+            rowCapacity *= 2;
+            for (int i = 0; i < columnCount; i++) {
+                offsets[i] = Arrays.copyOf(offsets[i], rowCapacity);
+                lengths[i] = Arrays.copyOf(lengths[i], rowCapacity);
+            }
+        }
+        for (int i = 0; i < columnCount; i++)
+            lengths[i][row] = NO_VALUE;
+        rowCount++;
+    }
+
+    /*
+     * Writes the rows in memory to the spill file and drops them, keeping only the slab values
+     * still referenced.
+     */
+    private void spill() throws IOException {
+        if (spill == null)
+            spill = new RowSpill(columnCount);
+        if (spilledRows == 0)
+            spill.clear();
+        int rows = rowCount - spilledRows;
+        for (int row = 0; row < rows; row++) {
+            for (int i = 0; i < columnCount; i++) {
+                int length = lengths[i][row];
+                if (length == NO_VALUE) {
+                    spill.writeEmptyCell();
+                } else {
+                    spill.writeCell(source(offsets[i][row]), index(offsets[i][row]), length);
+                    spilledColumns[i] = true;
+                }
+            }
+        }
+        for (int i = 0; i < columnCount; i++) {
+            int row = explicitSequences[i] - spilledRows;
+            if (row >= 0 && row < rows && lengths[i][row] != NO_VALUE) {
+                explicitOffsets[i] = offsets[i][row];
+                explicitLengths[i] = lengths[i][row];
+            }
+        }
+        spilledRows = rowCount;
+        compactSlab();
+    }
+
+    /*
+     * Moves the slab values referenced by master cells, explicit sequence values, patches and the
+     * rows in memory to the front of the slab.
+     */
+    private void compactSlab() {
+        if (spare.length < slab.length)
+            spare = new byte[slab.length];
+        int size = 0;
+        for (int row = 0; row < rowCount - spilledRows; row++) {
+            for (int i = 0; i < columnCount; i++) {
+                if (lengths[i][row] != NO_VALUE && offsets[i][row] < 0) {
+                    offsets[i][row] = moveToSpare(offsets[i][row], lengths[i][row], size);
+                    size += lengths[i][row];
+                }
+            }
+        }
+        for (int i = 0; i < columnCount; i++) {
+            if (masterLengths[i] != NO_VALUE && masterOffsets[i] < 0) {
+                masterOffsets[i] = moveToSpare(masterOffsets[i], masterLengths[i], size);
+                size += masterLengths[i];
+            }
+            if (explicitLengths[i] != NO_VALUE && explicitOffsets[i] < 0) {
+                explicitOffsets[i] = moveToSpare(explicitOffsets[i], explicitLengths[i], size);
+                size += explicitLengths[i];
+            }
+        }
+        for (int p = 0; p < patchCount * 4; p += 4) {
+            if (patches[p + 2] < 0) {
+                patches[p + 2] = moveToSpare(patches[p + 2], patches[p + 3], size);
+                size += patches[p + 3];
+            }
+        }
+        byte[] compacted = spare;
+        spare = slab;
+        slab = compacted;
+        slabSize = size;
+    }
+
+    private int moveToSpare(int offset, int length, int at) {
+        System.arraycopy(slab, ~offset, spare, at, length);
+        return ~at;
+    }
+
+    private void addPatch(int row, int colNum, int offset, int length) throws IOException {
+        if (patchCount * 4 == patches.length)
+            patches = Arrays.copyOf(patches, patches.length * 2);
+        int p = patchCount++ * 4;
+        patches[p] = row;
+        patches[p + 1] = colNum;
+        patches[p + 2] = offset;
+        patches[p + 3] = length;
+        spilledColumns[colNum] = true;
+        if (row == explicitSequences[colNum]) {
+            explicitOffsets[colNum] = offset;
+            explicitLengths[colNum] = length;
+        }
+        if (patchCount == spillThreshold * columnCount)
+            spillPatches();
+    }
+
+    /*
+     * Writes the patches to the spill file and drops their slab values. Patches of a column are
+     * in row order, as the spill file expects them.
+     */
+    private void spillPatches() throws IOException {
+        for (int p = 0; p < patchCount * 4; p += 4)
+            spill.writePatch(patches[p + 1], patches[p], source(patches[p + 2]), index(patches[p + 2]), patches[p + 3]);
+        patchCount = 0;
+        compactSlab();
+    }
+
+    int getPatchCount() {
+        return patchCount;
+    }
+
+    int getSlabSize() {
+        return slabSize;
+    }
+
+    private void checkNotSpilled() {
+        if (spilledRows > 0)
+            throw new IllegalStateException("Rows of the record have been spilled.");
     }
 
     public String toString() {
@@ -127,191 +458,341 @@ public class ASN1RecordSet extends ArrayList<byte[][]> {
         try {
             rows = getDecodedRows();
         } catch (Exception e) {
-            e.printStackTrace();
-        }
-        String result = "";
-        for (String s : rows) {
-            result += (result.length() == 0 ? "@" : "\n\r") + s;
+            logger.debug("Decoding rows.", e);
         }
         return Arrays.toString(rows);
     }
 
     public int buildRecords(int initialRecordNum) throws Exception {
-        if (size() == 0) addEmptyRow();
-        logger.fine("Building records. Index: " + initialRecordNum);
-        try {
-            if (hasHeader("SUB_SEQ")) {
-                int colNum = getHeaderNum("SUB_SEQ");
-                for (Integer row = 1; row <= this.size(); row++) {
-                    byte[] val = ByteBuffer.allocate(4).putInt(row).array();
-                    get(row - 1)[colNum] = val;
-                }
+        if (rejected) {
+            rowCount = 0;
+            return 0;
+        }
+        if (rowCount == 0) addEmptyRow();
+        if (logger.isDebugEnabled())
+            logger.debug("Building records. Index: " + initialRecordNum);
+        this.initialRecordNum = initialRecordNum;
+
+        int masterCount = 0;
+        for (int i = 0; i < columnCount; i++) {
+            if (masterLengths[i] != NO_VALUE) {
+                if (spilledColumns[i])
+                    throw new Exception("Cell is not empty. row=spilled col=" + i);
+                masterColumns[masterCount++] = i;
             }
+        }
 
-            if (hasHeader("REC_NO")) {
-                int colNum = getHeaderNum("REC_NO");
-                int recNo = initialRecordNum;
-                for (Integer row = 1; row <= this.size(); row++) {
-                    recNo += 1;
-                    byte[] val = ByteBuffer.allocate(4).putInt(recNo).array();
-                    get(row - 1)[colNum] = val;
-                }
+        for (int row = 0; row < rowCount - spilledRows; row++) {
+            for (int m = 0; m < masterCount; m++) {
+                int i = masterColumns[m];
+                if (lengths[i][row] != NO_VALUE)
+                    throw new Exception("Cell is not empty. row=" + (spilledRows + row) + " col=" + i);
+                offsets[i][row] = masterOffsets[i];
+                lengths[i][row] = masterLengths[i];
             }
+        }
+        populateExplicitSequenceRecords();
+        multiRecord = rowCount > 1;
+        if (filter != null)
+            filterRows();
 
-            if (hasHeader("MULTI_RECORD")){
-                int colNum = getHeaderNum("MULTI_RECORD");
-                int isMultiRecord = size() > 1 ? 1 : 0;
-                byte[] val = ByteBuffer.allocate(4).putInt(isMultiRecord).array();
+        return rowCount;
+    }
 
-                for (Integer row = 1; row <= this.size(); row++) {
-                    get(row - 1)[colNum] = val;
+    private void filterRows() throws Exception {
+        if (sourceRows.length < rowCount)
+            sourceRows = new int[rowCapacity];
+        int kept = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (!filter.accept(this, row, filterScratch))
+                continue;
+            if (kept != row) {
+                for (int i = 0; i < columnCount; i++) {
+                    offsets[i][kept] = offsets[i][row];
+                    lengths[i][kept] = lengths[i][row];
                 }
             }
-        } catch (Exception e) {
-            throw new Exception("Error populating ID columns");
+            sourceRows[kept++] = row;
         }
+        rowCount = kept;
+    }
 
-        for (byte[][] row : this) {
-            for (int i = 0; i < columnCount; i++) {
-                if (masterRow[i] != null) {
-                    if (row[i] == null)
-                        row[i] = masterRow[i];
-                    else
-                        throw new Exception("Cell is not empty. row=" + this.indexOf(row) + " col=" + i);
+    /*
+     * Every row shares the slice of the explicit sequence row, e.g. row 0 for 79.13.*[0].1.
+     */
+    private void populateExplicitSequenceRecords() throws Exception {
+        for (int colNum = 0; colNum < columnCount; colNum++) {
+            int sequence = explicitSequences[colNum];
+            explicitFilled[colNum] = sequence > -1 && sequence < rowCount && rowCount > 1;
+            if (explicitFilled[colNum]) {
+                int offset;
+                int length;
+                if (sequence < spilledRows) {
+                    offset = explicitOffsets[colNum];
+                    length = explicitLengths[colNum];
+                } else {
+                    offset = offsets[colNum][sequence - spilledRows];
+                    length = lengths[colNum][sequence - spilledRows];
                 }
+                if (length == NO_VALUE)
+                    throw new Exception("Explicit sequence cell is empty. header="
+                            + schema.getHeader(colNum).getHeaderName() + " row=" + sequence);
+                explicitOffsets[colNum] = offset;
+                explicitLengths[colNum] = length;
+                Arrays.fill(offsets[colNum], 0, rowCount - spilledRows, offset);
+                Arrays.fill(lengths[colNum], 0, rowCount - spilledRows, length);
             }
         }
-        populateExplicitSequenceRecords();
+    }
 
-        return size();
+    public void writeRecords(OutputStream bufferedOutputStream) throws Exception {
+        ByteSink sink = sinkFor(bufferedOutputStream);
+        int recNoColumn = recordNumberOutput == null ? ASN1SchemaNode.NO_COLUMN : schema.getHeaderNum(ASN1Schema.REC_NO);
+        if (spilledRows > 0)
+            writeSpilledRecords(sink, recNoColumn);
+        if (binaryRow != null) {
+            writeBinaryRecords(sink);
+            return;
+        }
+        for (int row = spilledRows; row < rowCount; row++) {
+            int r = row - spilledRows;
+            for (int i = 0; i < columnCount; i++) {
+                if (i > 0)
+                    sink.write(',');
+                if (i == recNoColumn)
+                    recordNumberOutput.markRecordNumber();
+                else if (synthetic[i] != 0)
+                    encodeInt(syntheticValue(i, row), i, sink);
+                else if (lengths[i][r] != NO_VALUE)
+                    codecs[i].encode(source(offsets[i][r]), index(offsets[i][r]), lengths[i][r], sink);
+            }
+            sink.write(LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
+        }
     }
 
-    private void populateExplicitSequenceRecords() throws Exception {
-        byte[][] row;
-        for (ASN1Header h : headerMap.values()) {
-            if (h.getExplicitSequence() > -1 && h.getExplicitSequence() < size()) {
-                int colNum = getHeaderNum(h.getHeaderName());
-                row = get(h.getExplicitSequence());
-                for (byte[][] r : this) {
-                    if (!r.equals(row))
-                        r[colNum] = row[colNum].clone();
+    private void writeBinaryRecords(ByteSink sink) throws Exception {
+        if (recordNumberOutput != null)
+            throw new IllegalStateException("Record number output is not supported in the binary row format.");
+        for (int row = spilledRows; row < rowCount; row++) {
+            int r = row - spilledRows;
+            startBinaryRow();
+            for (int i = 0; i < columnCount; i++) {
+                if (synthetic[i] != 0) {
+                    fillIntCell(syntheticValue(i, row));
+                    writeBinaryCell(i, intCell, 0, 4);
+                } else if (lengths[i][r] != NO_VALUE) {
+                    writeBinaryCell(i, source(offsets[i][r]), index(offsets[i][r]), lengths[i][r]);
                 }
             }
+            endBinaryRow(sink);
         }
     }
 
-    public void writeRecords(BufferedOutputStream bufferedOutputStream) throws Exception {
-        logger.fine("Writing records to the buffer.");
-        String[] rows = new String[this.size()];
-        String str;
-        for (byte[][] row : this) {
-            str = "";
+    private void startBinaryRow() throws IOException {
+        binaryRow.reset();
+        for (int i = 0; i < columnCount; i += 8)
+            binaryRow.write(0);
+    }
+
+    private void writeBinaryCell(int colNum, byte[] data, int offset, int length) throws Exception {
+        binaryRow.buf[colNum >>> 3] |= (byte) (1 << (colNum & 7));
+        if (dataTypes[colNum] != DataType.INTEGER) {
+            binaryRow.writeVarint(length);
+            binaryRow.write(data, offset, length);
+            return;
+        }
+        if (length == 0 || length > 8)
+            throw new NumberFormatException("INTEGER of " + length + " bytes does not fit in the binary row format. header="
+                    + schema.getHeader(colNum).getHeaderName());
+        long value = data[offset]; // sign extended
+        for (int i = offset + 1; i < offset + length; i++)
+            value = (value << 8) | (data[i] & 0xff);
+        binaryRow.writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void endBinaryRow(ByteSink sink) throws IOException {
+        sink.writeVarint(binaryRow.size());
+        sink.write(binaryRow.buf, 0, binaryRow.size());
+    }
+
+    private void writeSpilledRecords(ByteSink sink, int recNoColumn) throws Exception {
+        // patches in row order, each key holds the row and the patch index
+        long[] order = new long[patchCount];
+        for (int p = 0; p < patchCount; p++)
+            order[p] = (long) patches[p * 4] << 32 | p;
+        Arrays.sort(order);
+
+        spill.rewind();
+        int next = 0;
+        for (int row = 0; row < spilledRows; row++) {
+            spill.readRow();
+            for (; next < patchCount && (int) (order[next] >>> 32) == row; next++) {
+                int p = (int) order[next] * 4;
+                spill.setCell(patches[p + 1], source(patches[p + 2]), index(patches[p + 2]), patches[p + 3]);
+            }
+            if (binaryRow != null) {
+                writeBinarySpilledRow(sink, row);
+                continue;
+            }
             for (int i = 0; i < columnCount; i++) {
-                str += (i==0 ? "" : ",");
-                if (row[i] != null) {
-                    str += decodeData(row[i], dataTypes[i]);
-                } else
-                    str += "";
+                if (i > 0)
+                    sink.write(',');
+                if (i == recNoColumn)
+                    recordNumberOutput.markRecordNumber();
+                else if (synthetic[i] != 0)
+                    encodeInt(syntheticValue(i, row), i, sink);
+                else if (explicitFilled[i])
+                    codecs[i].encode(source(explicitOffsets[i]), index(explicitOffsets[i]), explicitLengths[i], sink);
+                else if (masterLengths[i] != NO_VALUE)
+                    codecs[i].encode(source(masterOffsets[i]), index(masterOffsets[i]), masterLengths[i], sink);
+                else if (spill.cellLength(i) != NO_VALUE)
+                    codecs[i].encode(spill.cellData(i), spill.cellOffset(i), spill.cellLength(i), sink);
             }
-            str += System.lineSeparator();
-            bufferedOutputStream.write(str.getBytes());
+            sink.write(LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
         }
-        logger.fine("Buffer write successfull.");
+    }
+
+    private void writeBinarySpilledRow(ByteSink sink, int row) throws Exception {
+        startBinaryRow();
+        for (int i = 0; i < columnCount; i++) {
+            if (synthetic[i] != 0) {
+                fillIntCell(syntheticValue(i, row));
+                writeBinaryCell(i, intCell, 0, 4);
+            } else if (explicitFilled[i]) {
+                writeBinaryCell(i, source(explicitOffsets[i]), index(explicitOffsets[i]), explicitLengths[i]);
+            } else if (masterLengths[i] != NO_VALUE) {
+                writeBinaryCell(i, source(masterOffsets[i]), index(masterOffsets[i]), masterLengths[i]);
+            } else if (spill.cellLength(i) != NO_VALUE) {
+                writeBinaryCell(i, spill.cellData(i), spill.cellOffset(i), spill.cellLength(i));
+            }
+        }
+        endBinaryRow(sink);
+    }
+
+    private ByteSink sinkFor(OutputStream outputStream) throws Exception {
+        if (outputStream instanceof ByteSink)
+            return (ByteSink) outputStream;
+        if (sink == null) {
+            sink = new ByteSink(outputStream, ByteSink.DEFAULT_SIZE);
+        } else if (sink.getTarget() != outputStream) {
+            flush();
+            sink.setTarget(outputStream);
+        }
+        return sink;
+    }
+
+    /*
+     * Writes out rows still held in the output buffer.
+     */
+    public void flush() throws Exception {
+        if (sink != null)
+            sink.drain();
+    }
+
+    /*
+     * Adds the hits and misses of the decode caches since the last call to metrics.
+     */
+    void addCacheCounts(ASN1ParseMetrics metrics) {
+        for (DataTypeCodec codec : codecs) {
+            if (codec instanceof DecodeCache) {
+                DecodeCache cache = (DecodeCache) codec;
+                metrics.addCacheCounts(cache.getHits(), cache.getMisses());
+                cache.resetCounts();
+            }
+        }
+    }
+
+    private int syntheticValue(int colNum, int row) {
+        switch (synthetic[colNum]) {
+            case SUB_SEQ:
+                return (filter == null ? row : sourceRows[row]) + 1;
+            case REC_NO:
+                return initialRecordNum + row + 1;
+            default:
+                return multiRecord ? 1 : 0;
+        }
+    }
+
+    /*
+     * Synthetic columns are 4 byte big endian values decoded with the column's data type.
+     */
+    private void encodeInt(int value, int colNum, ByteSink sink) throws Exception {
+        fillIntCell(value);
+        codecs[colNum].encode(intCell, 0, 4, sink);
+    }
+
+    private void fillIntCell(int value) {
+        intCell[0] = (byte) (value >>> 24);
+        intCell[1] = (byte) (value >>> 16);
+        intCell[2] = (byte) (value >>> 8);
+        intCell[3] = (byte) value;
+    }
+
+    void encodeRecordNumber(int recNo, ByteSink sink) throws Exception {
+        encodeInt(recNo, schema.getHeaderNum(ASN1Schema.REC_NO), sink);
+    }
+
+    /*
+     * Array holding the value of a built cell, at cellOffset for cellLength bytes. For the
+     * computed columns it is a scratch array only valid until the next call.
+     */
+    byte[] cellData(int row, int colNum) {
+        if (synthetic[colNum] != 0) {
+            fillIntCell(syntheticValue(colNum, row));
+            return intCell;
+        }
+        return source(offsets[colNum][row]);
+    }
+
+    int cellOffset(int row, int colNum) {
+        return synthetic[colNum] != 0 ? 0 : index(offsets[colNum][row]);
+    }
+
+    private byte[] source(int offset) {
+        return offset < 0 ? slab : input;
+    }
+
+    private static int index(int offset) {
+        return offset < 0 ? ~offset : offset;
+    }
+
+    /*
+     * Value length of a built cell, negative for an empty cell. Not available once rows have
+     * been spilled.
+     */
+    int cellLength(int row, int colNum) {
+        checkNotSpilled();
+        return synthetic[colNum] != 0 ? 4 : lengths[colNum][row];
     }
 
     public String[] getDecodedRows() throws Exception {
-        String[] rows = new String[this.size()];
-        for (byte[][] row : this) {
-            StringBuilder csvRow = new StringBuilder();
+        checkNotSpilled();
+        String[] rows = new String[rowCount];
+        ByteSink text = new ByteSink(256);
+        for (int row = 0; row < rowCount; row++) {
+            text.reset();
             for (int i = 0; i < columnCount; i++) {
-                String str = decodeData(row[i], dataTypes[i]);
-                csvRow.append(csvRow.length() == 0 ? "" : ",").append(str);
+                if (i > 0)
+                    text.write(',');
+                int length = cellLength(row, i);
+                if (length != NO_VALUE)
+                    codecs[i].encode(cellData(row, i), cellOffset(row, i), length, text);
             }
-            rows[indexOf(row)] = csvRow.toString();
+            rows[row] = new String(text.toByteArray());
         }
         return rows;
     }
 
-    public void addEmptyRow() {
-        add(new byte[headerMap.size()][]);
+    /*
+     * Writes the CSV text of a cell straight into the output buffer.
+     */
+    public void encodeData(byte[] data, DataType dataType, ByteSink sink) throws Exception {
+        dataType.getCodec().encode(data, 0, data.length, sink);
     }
 
     public String decodeData(byte[] data, DataType dataType) throws Exception {
-        String decoded = "";
-        switch (dataType) {
-            case OCTET_STRING:
-                for (byte b : data)
-                    decoded += String.format("%02X", b);
-                break;
-            case TBCD_STRING:
-                for (byte b : data) { //Convert signed byte to unsigned short by (& 0xff)
-                    if (((b & 0xff) & 0xf) != 0xf)
-                        decoded += Integer.toString((b & 0xff) & 0xf);
-                    if ((((b & 0xff) >> 4) & 0xf) != 0xf)
-                        decoded += Integer.toString((b & 0xff) >> 4);
-                }
-                break;
-            case IA5_STRING:
-                decoded = "\"" + new String(data, StandardCharsets.UTF_8)
-                        .replace("\\", "\\\\")
-                        .replace("\"", "\\\"") + "\"";
-                break;
-            case INTEGER:
-                decoded = new BigInteger(data).toString();
-                break;
-            case IP_STRING:
-                if (data.length != 4)
-                    throw new Exception("Invalid IP_STRING data.");
-                decoded = Integer.toString(data[0] & 0xff) + "."
-                        + Integer.toString(data[1] & 0xff) + "."
-                        + Integer.toString(data[2] & 0xff) + "."
-                        + Integer.toString(data[3] & 0xff);
-                break;
-            case IPV6_STRING:
-                if (data.length != 16)
-                    throw new Exception("Invalid IPV6_STRING length:" + data.length);
-                String buff = "";
-
-                for (byte b : data) //Convert signed byte to unsigned short by (& 0xff)
-                    buff += String.format("%02X", b);
-
-                int index = 8;
-                int[] s = new int[2];
-                for (int i = 0; i < 8; i++) {
-                    int a1 = Integer.parseInt(String.valueOf(buff.charAt(index)), 16);
-                    int a2 = Integer.parseInt(String.valueOf(buff.charAt(++index)), 16);
-                    int a3 = Integer.parseInt(String.valueOf(buff.charAt(++index)), 16);
-                    index++;
-
-                    int q = a2 / 4;
-                    int r = a2 % 4;
-                    s[0] = (4 * a1) + q; //q = a2 / 4;
-                    s[1] = (16 * r) + a3;//r = a2 % 4;
-
-                    for (int c : s) {
-                        if (c >= 0 && c < 10) {
-                            decoded += (char) (c + 48);
-                        } else if (c < 36) {
-                            decoded += (char) (c + 55);
-                        } else if (c < 62) {
-                            decoded += (char) (c + 61);
-                        } else if (c == 62) {
-                            decoded += "!";
-                        } else if (c == 63) {
-                            decoded += "_";
-                        } else {
-                            throw new Exception("Invalid IPV6_STRING char value. index= " + index + " char= " + c);
-                        }
-                        buff += (char) c;
-                    }
-                }
-                break;
-            case BOOLEAN:
-                decoded = (data[0] == (byte) 0xff ? "TRUE" : "FALSE");
-                break;
-            default:
-                throw new Exception("Data type is invalid. dataType=" + dataType);
-        }
-        return decoded;
+        ByteSink text = new ByteSink(64);
+        encodeData(data, dataType, text);
+        return new String(text.toByteArray());
     }
 }
@@ -0,0 +1,119 @@
+package com.bonyansystem.processors.asn1;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * CSV schema compiled into a tag path trie. The BER walk moves between trie nodes by tag
+ * number and every primitive resolves straight to a column, so no address strings are built.
+ */
+public class ASN1Schema {
+    public static final String REC_NO = "REC_NO";
+    public static final String SUB_SEQ = "SUB_SEQ";
+    public static final String MULTI_RECORD = "MULTI_RECORD";
+    static final String CACHE_SUFFIX = ":CACHE";
+    static final int DEFAULT_CACHE_SIZE = 4096;
+    private static final Pattern EXPLICIT_SEQUENCE = Pattern.compile("\\[\\d*\\]");
+    private static final Pattern TAG_NUMBER = Pattern.compile("0|[1-9]\\d{0,8}");
+
+    private final ASN1SchemaNode root = new ASN1SchemaNode(null, false);
+    private final Map<String, ASN1Header> headerMap = new HashMap<>();
+    private final ASN1Header[] headers;
+    private final DataType[] dataTypes;
+    private final int[] cacheSizes; //decoded values cached per column, 0 for none
+
+    public ASN1Schema(String recordSchema, String schemaDataTypes) throws Exception {
+        String[] columns = recordSchema.split(",");
+        headers = new ASN1Header[columns.length];
+        for (int colNum = 0; colNum < columns.length; colNum++)
+            headers[colNum] = initHeader(columns[colNum], colNum);
+
+        String[] dataTypesRaw = schemaDataTypes.split(",");
+        if (dataTypesRaw.length != headers.length)
+            throw new Exception("Invalid data types string.");
+
+        dataTypes = new DataType[headers.length];
+        cacheSizes = new int[headers.length];
+        for (int i = 0; i < headers.length; i++) {
+            // e.g. IP_STRING:CACHE for a column with few distinct values
+            String dataType = dataTypesRaw[i];
+            if (dataType.endsWith(CACHE_SUFFIX)) {
+                dataType = dataType.substring(0, dataType.length() - CACHE_SUFFIX.length());
+                cacheSizes[i] = DEFAULT_CACHE_SIZE;
+            }
+            dataTypes[i] = DataType.valueOf(dataType);
+        }
+    }
+
+    private ASN1Header initHeader(String s, int colNum) throws Exception {
+        Matcher matcher = EXPLICIT_SEQUENCE.matcher(s);
+        int explicitSequence = -1;
+        if (matcher.find()) {
+            String seqStr = matcher.group(0);
+            explicitSequence = Integer.parseInt(seqStr
+                    .replace("[", "")
+                    .replace("]", ""));
+            s = s.replace(seqStr, "");
+        }
+        if (headerMap.containsKey(s))
+            throw new Exception("Duplicate schema column: " + s);
+
+        ASN1Header header = new ASN1Header();
+        header.setHeaderName(s);
+        header.setExplicitSequence(explicitSequence);
+        header.setColNum(colNum);
+        headerMap.put(s, header);
+        addPath(s, colNum);
+        return header;
+    }
+
+    /*
+     * Columns that are not a plain tag path (REC_NO, SUB_SEQ, MULTI_RECORD or any unknown name)
+     * never match a BER address, so they get no trie node.
+     */
+    private void addPath(String address, int colNum) {
+        String[] steps = address.split("\\.", -1);
+        for (String step : steps)
+            if (!step.equals("*") && !TAG_NUMBER.matcher(step).matches())
+                return;
+
+        ASN1SchemaNode node = root;
+        for (String step : steps)
+            node = step.equals("*") ? node.addSequenceChild() : node.addChild(Integer.parseInt(step));
+        node.setColumn(colNum);
+    }
+
+    public ASN1SchemaNode getRoot() {
+        return root;
+    }
+
+    public int getColumnCount() {
+        return headers.length;
+    }
+
+    public ASN1Header getHeader(int colNum) {
+        return headers[colNum];
+    }
+
+    public DataType getDataType(int colNum) {
+        return dataTypes[colNum];
+    }
+
+    /*
+     * Number of decoded values of the column kept by its DecodeCache, 0 when not cached.
+     */
+    public int getCacheSize(int colNum) {
+        return cacheSizes[colNum];
+    }
+
+    public boolean hasHeader(String header) {
+        return headerMap.containsKey(header);
+    }
+
+    public int getHeaderNum(String header) {
+        ASN1Header h = headerMap.get(header);
+        return h == null ? ASN1SchemaNode.NO_COLUMN : h.getColNum();
+    }
+}
@@ -0,0 +1,142 @@
+package com.bonyansystem.processors.asn1;
+
+/*
+ * One step of a compiled schema tag path. Children are addressed by BER tag number,
+ * a SEQUENCE child stands for the "*" part of an address like 79.19.2.*.2
+ * Nodes only exist on the path of a schema column, any other address resolves to EMPTY.
+ * A node ending a column path targets that column of one or more tables, where a trie merged
+ * from several schemas has a table per schema and the trie of a single schema only table 0.
+ */
+public final class ASN1SchemaNode {
+    public static final int NO_COLUMN = -1;
+    static final ASN1SchemaNode EMPTY = new ASN1SchemaNode(null, false);
+    private static final int MAX_DENSE_TAG = 1024;
+
+    private final String address;
+    private final boolean iterated;
+    private int[] targetTables = new int[0];
+    private int[] targetColumns = new int[0];
+    private ASN1SchemaNode[] children = new ASN1SchemaNode[0];
+    private int[] sparseTags = new int[0];
+    private ASN1SchemaNode[] sparseChildren = new ASN1SchemaNode[0];
+    private ASN1SchemaNode sequenceChild;
+
+    ASN1SchemaNode(String address, boolean iterated) {
+        this.address = address;
+        this.iterated = iterated;
+    }
+
+    public ASN1SchemaNode getChild(int tagNo) {
+        if (tagNo < children.length) {
+            ASN1SchemaNode child = children[tagNo];
+            return child == null ? EMPTY : child;
+        }
+        for (int i = 0; i < sparseTags.length; i++)
+            if (sparseTags[i] == tagNo)
+                return sparseChildren[i];
+        return EMPTY;
+    }
+
+    public ASN1SchemaNode getSequenceChild() {
+        return sequenceChild == null ? EMPTY : sequenceChild;
+    }
+
+    public boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    /*
+     * Column of the first table this node targets.
+     */
+    public int getColumn() {
+        return targetColumns.length == 0 ? NO_COLUMN : targetColumns[0];
+    }
+
+    public int getTargetCount() {
+        return targetTables.length;
+    }
+
+    public int getTargetTable(int i) {
+        return targetTables[i];
+    }
+
+    public int getTargetColumn(int i) {
+        return targetColumns[i];
+    }
+
+    public boolean isIterated() {
+        return iterated;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    void setColumn(int column) {
+        addTarget(0, column);
+    }
+
+    private void addTarget(int table, int column) {
+        int n = targetTables.length;
+        int[] tables = new int[n + 1];
+        int[] columns = new int[n + 1];
+        System.arraycopy(targetTables, 0, tables, 0, n);
+        System.arraycopy(targetColumns, 0, columns, 0, n);
+        tables[n] = table;
+        columns[n] = column;
+        targetTables = tables;
+        targetColumns = columns;
+    }
+
+    /*
+     * Adds the paths under other, a node of a single schema trie, with its columns targeting table.
+     */
+    void merge(ASN1SchemaNode other, int table) {
+        for (int i = 0; i < other.targetColumns.length; i++)
+            addTarget(table, other.targetColumns[i]);
+        for (int tagNo = 0; tagNo < other.children.length; tagNo++)
+            if (other.children[tagNo] != null)
+                addChild(tagNo).merge(other.children[tagNo], table);
+        for (int i = 0; i < other.sparseTags.length; i++)
+            addChild(other.sparseTags[i]).merge(other.sparseChildren[i], table);
+        if (other.sequenceChild != null)
+            addSequenceChild().merge(other.sequenceChild, table);
+    }
+
+    ASN1SchemaNode addChild(int tagNo) {
+        ASN1SchemaNode child = getChild(tagNo);
+        if (child != EMPTY)
+            return child;
+
+        child = new ASN1SchemaNode(join(Integer.toString(tagNo)), iterated);
+        if (tagNo < MAX_DENSE_TAG) {
+            if (tagNo >= children.length) {
+                ASN1SchemaNode[] grown = new ASN1SchemaNode[tagNo + 1];
+                System.arraycopy(children, 0, grown, 0, children.length);
+                children = grown;
+            }
+            children[tagNo] = child;
+        } else {
+            int n = sparseTags.length;
+            int[] tags = new int[n + 1];
+            ASN1SchemaNode[] nodes = new ASN1SchemaNode[n + 1];
+            System.arraycopy(sparseTags, 0, tags, 0, n);
+            System.arraycopy(sparseChildren, 0, nodes, 0, n);
+            tags[n] = tagNo;
+            nodes[n] = child;
+            sparseTags = tags;
+            sparseChildren = nodes;
+        }
+        return child;
+    }
+
+    ASN1SchemaNode addSequenceChild() {
+        if (sequenceChild == null)
+            sequenceChild = new ASN1SchemaNode(join("*"), true);
+        return sequenceChild;
+    }
+
+    private String join(String step) {
+        return address == null ? step : address + "." + step;
+    }
+}
@@ -0,0 +1,36 @@
+package com.bonyansystem.processors.asn1;
+
+import java.util.Map;
+
+/*
+ * Several named schemas compiled into one tag path trie, so one BER walk fills a record set
+ * per schema. Tables are numbered in map order, table 0 being the first schema.
+ */
+public class ASN1SchemaSet {
+    private final ASN1SchemaNode root = new ASN1SchemaNode(null, false);
+    private final String[] names;
+    private final ASN1Schema[] schemas;
+
+    public ASN1SchemaSet(Map<String, ASN1Schema> schemas) {
+        this.names = schemas.keySet().toArray(new String[0]);
+        this.schemas = schemas.values().toArray(new ASN1Schema[0]);
+        for (int table = 0; table < this.schemas.length; table++)
+            root.merge(this.schemas[table].getRoot(), table);
+    }
+
+    public ASN1SchemaNode getRoot() {
+        return root;
+    }
+
+    public int getTableCount() {
+        return schemas.length;
+    }
+
+    public String getName(int table) {
+        return names[table];
+    }
+
+    public ASN1Schema getSchema(int table) {
+        return schemas[table];
+    }
+}
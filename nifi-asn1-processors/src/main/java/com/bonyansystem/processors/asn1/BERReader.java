@@ -0,0 +1,187 @@
+package com.bonyansystem.processors.asn1;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+
+/*
+ * Byte source of the BER walk. Implementations keep their own absolute position so the
+ * parser can bound definite length blocks without counting bytes itself.
+ */
+public abstract class BERReader implements Closeable {
+
+    /*
+     * Next byte as 0-255 or -1 at end of input.
+     */
+    public abstract int read() throws IOException;
+
+    public abstract void readFully(byte[] data, int offset, int length) throws IOException;
+
+    public abstract void skip(long length) throws IOException;
+
+    /*
+     * Skips length bytes, or up to the end of input when fewer are left. Returns the bytes skipped.
+     */
+    public long skipAtMost(long length) throws IOException {
+        long start = position();
+        while (position() - start < length && read() >= 0)
+            ;
+        return position() - start;
+    }
+
+    public abstract boolean hasRemaining() throws IOException;
+
+    /*
+     * Number of bytes consumed since the start of input.
+     */
+    public abstract long position();
+
+    /*
+     * Array holding the whole input when the reader is backed by one, otherwise null, e.g. for
+     * a mapped file. Values can then be referenced in place with readSlice instead of being copied.
+     */
+    public byte[] backingArray() {
+        return null;
+    }
+
+    /*
+     * Consumes length bytes and returns the index of the first one in the backing array. Only
+     * called when backingArray() is not null.
+     */
+    public int readSlice(int length) throws IOException {
+        throw new UnsupportedOperationException("Reader is not backed by an array.");
+    }
+
+    public byte[] readValue(int length) throws IOException {
+        byte[] data = new byte[length];
+        readFully(data, 0, length);
+        return data;
+    }
+
+    public int readTagNumber(int tag) throws IOException {
+        int tagNo = tag & 0x1f;
+
+        //
+        // with tagged object tag number is bottom 5 bits, or stored at the start of the content
+        //
+        if (tagNo == 0x1f) {
+            tagNo = 0;
+
+            int b = read();
+
+            // X.690-0207 8.1.2.4.2
+            // "c) bits 7 to 1 of the first subsequent octet shall not all be zero."
+            if ((b & 0x7f) == 0) // Note: -1 will pass
+            {
+                throw new IOException("corrupted stream - invalid high tag number found");
+            }
+
+            while ((b >= 0) && ((b & 0x80) != 0)) {
+                tagNo |= (b & 0x7f);
+                tagNo <<= 7;
+                b = read();
+            }
+
+            if (b < 0) {
+                throw new EOFException("EOF found inside tag value.");
+            }
+
+            tagNo |= (b & 0x7f);
+        }
+        return tagNo;
+    }
+
+    public int readLength() throws IOException {
+        int length = read();
+
+        if (length < 0) {
+            throw new EOFException("EOF found when length expected");
+        }
+
+        if (length == 0x80) {
+            return -1;      // indefinite-length encoding
+        }
+
+        if (length > 127) {
+            int size = length & 0x7f;
+
+            // Note: The invalid long form "0xff" (see X.690 8.1.3.5c) will be caught here
+            if (size > 4) {
+                throw new IOException("DER length more than 4 bytes: " + size);
+            }
+
+            length = 0;
+            for (int i = 0; i < size; i++) {
+                int next = read();
+
+                if (next < 0) {
+                    throw new EOFException("EOF found reading length");
+                }
+
+                length = (length << 8) + next;
+            }
+
+            if (length < 0) {
+                throw new IOException("corrupted stream - negative length found");
+            }
+        }
+        return length;
+    }
+
+    /*
+     * Moves past the content of an indefinite length TLV up to and including its end-of-contents
+     * octets, copying the bytes into copy when one is given. Open indefinite length TLVs are only
+     * counted, definite length ones are passed over by their length.
+     */
+    public void skipIndefinite(ByteSink copy) throws IOException {
+        int depth = 1;
+        while (depth > 0) {
+            int tag = readCopied(copy);
+            if ((tag & 0x1f) == 0x1f) {
+                int b;
+                do {
+                    b = readCopied(copy);
+                } while ((b & 0x80) != 0);
+            }
+
+            int length = readCopied(copy);
+            if (length == 0x80) {
+                if ((tag & 0x20) == 0)
+                    throw new IOException("Indefinite length primitive. pos: " + position());
+                depth++;
+                continue;
+            }
+            if (tag == 0 && length == 0) {
+                depth--;
+                continue;
+            }
+            if (length > 127) {
+                int size = length & 0x7f;
+                if (size > 4)
+                    throw new IOException("DER length more than 4 bytes: " + size);
+                length = 0;
+                for (int i = 0; i < size; i++)
+                    length = (length << 8) + readCopied(copy);
+                if (length < 0)
+                    throw new IOException("corrupted stream - negative length found");
+            }
+
+            if (copy == null) {
+                skip(length);
+            } else {
+                byte[] buf = copy.reserve(length);
+                readFully(buf, copy.size(), length);
+                copy.setSize(copy.size() + length);
+            }
+        }
+    }
+
+    private int readCopied(ByteSink copy) throws IOException {
+        int b = read();
+        if (b < 0)
+            throw new EOFException("EOF found inside indefinite length block.");
+        if (copy != null)
+            copy.write(b);
+        return b;
+    }
+}
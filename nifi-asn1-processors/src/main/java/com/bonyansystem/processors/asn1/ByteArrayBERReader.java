@@ -0,0 +1,78 @@
+package com.bonyansystem.processors.asn1;
+
+import java.io.EOFException;
+import java.io.IOException;
+
+/*
+ * BER reader over bytes already in memory, e.g. a record aligned chunk of a larger file.
+ */
+public class ByteArrayBERReader extends BERReader {
+    private final byte[] data;
+    private final int offset;
+    private final int end;
+    private int index;
+
+    public ByteArrayBERReader(byte[] data, int offset, int length) {
+        this.data = data;
+        this.offset = offset;
+        this.end = offset + length;
+        this.index = offset;
+    }
+
+    @Override
+    public int read() {
+        if (index < end)
+            return data[index++] & 0xff;
+        return -1;
+    }
+
+    @Override
+    public void readFully(byte[] dst, int dstOffset, int length) throws IOException {
+        if (length > end - index)
+            throw new EOFException("EOF found reading value. pos: " + position());
+        System.arraycopy(data, index, dst, dstOffset, length);
+        index += length;
+    }
+
+    @Override
+    public byte[] backingArray() {
+        return data;
+    }
+
+    @Override
+    public int readSlice(int length) throws IOException {
+        if (length > end - index)
+            throw new EOFException("EOF found reading value. pos: " + position());
+        int start = index;
+        index += length;
+        return start;
+    }
+
+    @Override
+    public void skip(long length) throws IOException {
+        if (length > end - index)
+            throw new EOFException("EOF found skipping value. pos: " + position());
+        index += (int) length;
+    }
+
+    @Override
+    public long skipAtMost(long length) {
+        int n = (int) Math.min(length, end - index);
+        index += n;
+        return n;
+    }
+
+    @Override
+    public boolean hasRemaining() {
+        return index < end;
+    }
+
+    @Override
+    public long position() {
+        return index - offset;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,139 @@
+package com.bonyansystem.processors.asn1;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/*
+ * Reusable output buffer rows are encoded into. With a target stream it is written out in
+ * large blocks when full, without one it grows and keeps everything in memory.
+ */
+public class ByteSink extends OutputStream {
+    public static final int DEFAULT_SIZE = 64 * 1024;
+    protected byte[] buf;
+    protected int count;
+    private OutputStream out;
+
+    public ByteSink(OutputStream out, int size) {
+        this.out = out;
+        this.buf = new byte[size];
+    }
+
+    public ByteSink(int size) {
+        this(null, size);
+    }
+
+    OutputStream getTarget() {
+        return out;
+    }
+
+    /*
+     * Writes to another stream from now on. Bytes not yet written to the old one are dropped.
+     */
+    void setTarget(OutputStream out) {
+        this.out = out;
+        count = 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buf.length)
+            makeRoom(1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len > buf.length - count) {
+            makeRoom(len);
+            if (len > buf.length - count) {
+                out.write(b, off, len);
+                return;
+            }
+        }
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    public void writeAscii(CharSequence s) throws IOException {
+        int len = s.length();
+        if (len > buf.length - count)
+            makeRoom(len);
+        for (int i = 0; i < len; i++) {
+            if (count == buf.length)
+                makeRoom(1);
+            buf[count++] = (byte) s.charAt(i);
+        }
+    }
+
+    /*
+     * Writes an unsigned base 128 varint, low 7 bits first.
+     */
+    public void writeVarint(long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        write((int) value);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /*
+     * Makes room for len more bytes and returns the buffer, to be filled from size() on
+     * and committed with setSize.
+     */
+    public byte[] reserve(int len) throws IOException {
+        if (len > buf.length - count) {
+            makeRoom(len);
+            if (len > buf.length - count)
+                grow(len);
+        }
+        return buf;
+    }
+
+    public void setSize(int size) {
+        this.count = size;
+    }
+
+    public void reset() {
+        count = 0;
+    }
+
+    public byte[] toByteArray() {
+        byte[] copy = new byte[count];
+        System.arraycopy(buf, 0, copy, 0, count);
+        return copy;
+    }
+
+    private void makeRoom(int len) throws IOException {
+        if (out != null)
+            drain();
+        else
+            grow(len);
+    }
+
+    private void grow(int len) {
+        byte[] grown = new byte[Math.max(buf.length * 2, count + len)];
+        System.arraycopy(buf, 0, grown, 0, count);
+        buf = grown;
+    }
+
+    /*
+     * Hands the buffered bytes to the target stream without flushing the stream itself.
+     */
+    public void drain() throws IOException {
+        if (out != null && count > 0) {
+            out.write(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        if (out != null)
+            out.flush();
+    }
+}
@@ -0,0 +1,37 @@
+package com.bonyansystem.processors.asn1;
+
+/*
+ * CSV output of one chunk parsed in parallel. REC_NO depends on the rows of all earlier
+ * chunks, so its cells are left out and their byte offsets marked to be filled in on write.
+ */
+class ChunkOutput extends ByteSink {
+    private int[] marks = new int[1024];
+    private int markCount;
+
+    ChunkOutput(int size) {
+        super(size);
+    }
+
+    void markRecordNumber() {
+        if (markCount == marks.length) {
+            int[] grown = new int[marks.length * 2];
+            System.arraycopy(marks, 0, grown, 0, markCount);
+            marks = grown;
+        }
+        marks[markCount++] = count;
+    }
+
+    /*
+     * Writes the chunk with record numbers initialRecordNum + 1, initialRecordNum + 2, ...
+     * in place of the marks.
+     */
+    void writeTo(ByteSink sink, ASN1RecordSet recordSet, int initialRecordNum) throws Exception {
+        int start = 0;
+        for (int i = 0; i < markCount; i++) {
+            sink.write(buf, start, marks[i] - start);
+            recordSet.encodeRecordNumber(initialRecordNum + i + 1, sink);
+            start = marks[i];
+        }
+        sink.write(buf, start, count - start);
+    }
+}
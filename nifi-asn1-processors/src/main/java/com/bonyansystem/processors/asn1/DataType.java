@@ -1,11 +1,21 @@
 package com.bonyansystem.processors.asn1;
 
 public enum DataType {
-    TBCD_STRING,
-    OCTET_STRING,
-    IA5_STRING,
-    IP_STRING,
-    INTEGER,
-    BOOLEAN,
-    IPV6_STRING;
+    TBCD_STRING(DataTypeCodecs.TBCD_STRING),
+    OCTET_STRING(DataTypeCodecs.OCTET_STRING),
+    IA5_STRING(DataTypeCodecs.IA5_STRING),
+    IP_STRING(DataTypeCodecs.IP_STRING),
+    INTEGER(DataTypeCodecs.INTEGER),
+    BOOLEAN(DataTypeCodecs.BOOLEAN),
+    IPV6_STRING(DataTypeCodecs.IPV6_STRING);
+
+    private final DataTypeCodec codec;
+
+    DataType(DataTypeCodec codec) {
+        this.codec = codec;
+    }
+
+    public DataTypeCodec getCodec() {
+        return codec;
+    }
 }
@@ -0,0 +1,8 @@
+package com.bonyansystem.processors.asn1;
+
+/*
+ * Encodes the raw value bytes of one cell as CSV text.
+ */
+public interface DataTypeCodec {
+    void encode(byte[] data, int offset, int length, ByteSink sink) throws Exception;
+}
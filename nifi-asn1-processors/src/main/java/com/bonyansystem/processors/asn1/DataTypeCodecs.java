@@ -0,0 +1,159 @@
+package com.bonyansystem.processors.asn1;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ * Table driven codecs of the built in data types. Each writes straight into the sink buffer.
+ */
+final class DataTypeCodecs {
+    private static final byte[] HEX_PAIRS = new byte[512];
+    private static final byte[] TBCD_DIGITS = new byte[256 * 4];
+    private static final byte[] TBCD_LENGTHS = new byte[256];
+    private static final byte[][] DECIMALS = new byte[256][];
+    private static final byte[] BASE64_DIGITS =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz!_".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "TRUE".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "FALSE".getBytes(StandardCharsets.US_ASCII);
+
+    static {
+        byte[] hex = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+        for (int b = 0; b < 256; b++) {
+            HEX_PAIRS[b * 2] = hex[b >> 4];
+            HEX_PAIRS[b * 2 + 1] = hex[b & 0xf];
+
+            // low nibble first, 0xf is filler, 0xa-0xe are written as 10-14
+            String digits = "";
+            for (int nibble : new int[]{b & 0xf, b >> 4})
+                if (nibble != 0xf)
+                    digits += Integer.toString(nibble);
+            TBCD_LENGTHS[b] = (byte) digits.length();
+            System.arraycopy(digits.getBytes(StandardCharsets.US_ASCII), 0, TBCD_DIGITS, b * 4, digits.length());
+
+            DECIMALS[b] = Integer.toString(b).getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private DataTypeCodecs() {
+    }
+
+    static final DataTypeCodec OCTET_STRING = (data, offset, length, sink) -> {
+        byte[] buf = sink.reserve(length * 2);
+        int p = sink.size();
+        for (int i = offset; i < offset + length; i++) {
+            int pair = (data[i] & 0xff) << 1;
+            buf[p++] = HEX_PAIRS[pair];
+            buf[p++] = HEX_PAIRS[pair + 1];
+        }
+        sink.setSize(p);
+    };
+
+    static final DataTypeCodec TBCD_STRING = (data, offset, length, sink) -> {
+        byte[] buf = sink.reserve(length * 4);
+        int p = sink.size();
+        for (int i = offset; i < offset + length; i++) {
+            int b = data[i] & 0xff;
+            int n = TBCD_LENGTHS[b];
+            int t = b << 2;
+            for (int j = 0; j < n; j++)
+                buf[p++] = TBCD_DIGITS[t + j];
+        }
+        sink.setSize(p);
+    };
+
+    static final DataTypeCodec IA5_STRING = (data, offset, length, sink) -> {
+        for (int i = offset; i < offset + length; i++) {
+            if (data[i] < 0) { // not plain ASCII, let the platform charset handle it
+                byte[] text = ("\"" + new String(data, offset, length, StandardCharsets.UTF_8)
+                        .replace("\\", "\\\\")
+                        .replace("\"", "\\\"") + "\"").getBytes();
+                sink.write(text, 0, text.length);
+                return;
+            }
+        }
+        byte[] buf = sink.reserve(length * 2 + 2);
+        int p = sink.size();
+        buf[p++] = '"';
+        for (int i = offset; i < offset + length; i++) {
+            byte b = data[i];
+            if (b == '\\' || b == '"')
+                buf[p++] = '\\';
+            buf[p++] = b;
+        }
+        buf[p++] = '"';
+        sink.setSize(p);
+    };
+
+    static final DataTypeCodec IP_STRING = (data, offset, length, sink) -> {
+        if (length != 4)
+            throw new Exception("Invalid IP_STRING data.");
+        byte[] buf = sink.reserve(15);
+        int p = sink.size();
+        for (int i = offset; i < offset + 4; i++) {
+            if (i > offset)
+                buf[p++] = '.';
+            byte[] decimal = DECIMALS[data[i] & 0xff];
+            for (byte d : decimal)
+                buf[p++] = d;
+        }
+        sink.setSize(p);
+    };
+
+    /*
+     * Two's complement big endian. Up to 8 bytes is decoded with long arithmetic.
+     */
+    static final DataTypeCodec INTEGER = (data, offset, length, sink) -> {
+        if (length == 0)
+            throw new NumberFormatException("Zero length BigInteger");
+        if (length > 8) {
+            sink.writeAscii(new BigInteger(Arrays.copyOfRange(data, offset, offset + length)).toString());
+            return;
+        }
+
+        long value = data[offset]; // sign extended
+        for (int i = offset + 1; i < offset + length; i++)
+            value = (value << 8) | (data[i] & 0xff);
+
+        byte[] buf = sink.reserve(20);
+        int p = sink.size();
+        if (value < 0)
+            buf[p++] = '-';
+        else
+            value = -value; // negative range holds Long.MIN_VALUE too
+
+        int digits = 1;
+        for (long v = value; v <= -10; v /= 10)
+            digits++;
+        for (int i = p + digits - 1; i >= p; i--) {
+            buf[i] = (byte) ('0' - value % 10);
+            value /= 10;
+        }
+        sink.setSize(p + digits);
+    };
+
+    /*
+     * 16 byte IPv6 value of which the last 12 bytes are written as 16 six bit digits.
+     */
+    static final DataTypeCodec IPV6_STRING = (data, offset, length, sink) -> {
+        if (length != 16)
+            throw new Exception("Invalid IPV6_STRING length:" + length);
+        byte[] buf = sink.reserve(16);
+        int p = sink.size();
+        for (int i = offset + 4; i < offset + 16; i += 3) {
+            int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+            buf[p++] = BASE64_DIGITS[bits >> 18];
+            buf[p++] = BASE64_DIGITS[(bits >> 12) & 0x3f];
+            buf[p++] = BASE64_DIGITS[(bits >> 6) & 0x3f];
+            buf[p++] = BASE64_DIGITS[bits & 0x3f];
+        }
+        sink.setSize(p);
+    };
+
+    static final DataTypeCodec BOOLEAN = (data, offset, length, sink) -> {
+        if (length == 0)
+            throw new Exception("Invalid BOOLEAN data.");
+        byte[] value = data[offset] == (byte) 0xff ? TRUE : FALSE;
+        sink.write(value, 0, value.length);
+    };
+}
@@ -0,0 +1,108 @@
+package com.bonyansystem.processors.asn1;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Codec remembering the CSV text of the most recently used raw values of a column, for columns
+ * where few distinct values repeat, e.g. node addresses, APNs or cell IDs. A hit is a hash probe
+ * on the raw bytes and a copy of the text, the least recently used value is evicted when full.
+ * Not thread safe, every record set has its own.
+ */
+class DecodeCache implements DataTypeCodec {
+    private final DataTypeCodec codec;
+    private final LinkedHashMap<Key, byte[]> values;
+    private final Key probe = new Key();
+    private final ByteSink text = new ByteSink(64);
+    private long hits;
+    private long misses;
+
+    DecodeCache(DataTypeCodec codec, final int capacity) {
+        this.codec = codec;
+        this.values = new LinkedHashMap<Key, byte[]>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public void encode(byte[] data, int offset, int length, ByteSink sink) throws Exception {
+        probe.set(data, offset, length);
+        byte[] value = values.get(probe);
+        if (value != null) {
+            hits++;
+            sink.write(value, 0, value.length);
+            return;
+        }
+        misses++;
+        text.reset();
+        codec.encode(data, offset, length, text);
+        value = text.toByteArray();
+        values.put(new Key(Arrays.copyOfRange(data, offset, offset + length)), value);
+        sink.write(value, 0, value.length);
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    long getMisses() {
+        return misses;
+    }
+
+    /*
+     * Starts counting again, the cached values are kept.
+     */
+    void resetCounts() {
+        hits = 0;
+        misses = 0;
+    }
+
+    /*
+     * Raw value bytes as a map key. The probe key views the caller's array, stored keys own a copy.
+     */
+    private static class Key {
+        private byte[] data;
+        private int offset;
+        private int length;
+        private int hash;
+
+        Key() {
+        }
+
+        Key(byte[] data) {
+            set(data, 0, data.length);
+        }
+
+        void set(byte[] data, int offset, int length) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+            int h = 1;
+            for (int i = offset; i < offset + length; i++)
+                h = 31 * h + data[i];
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            if (other.length != length || other.hash != hash)
+                return false;
+            for (int i = 0; i < length; i++)
+                if (data[offset + i] != other.data[other.offset + i])
+                    return false;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.bonyansystem.processors.asn1;
+
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.logging.LogLevel;
+
+/*
+ * The processor's ComponentLog limited to the LOG_LEVEL of this processor instance.
+ */
+class FilteredComponentLog extends LeveledComponentLog {
+    private final ComponentLog delegate;
+    private final LogLevel minimum;
+
+    FilteredComponentLog(ComponentLog delegate, LogLevel minimum) {
+        this.delegate = delegate;
+        this.minimum = minimum;
+    }
+
+    /*
+     * LOG_LEVEL property value: ALL, INFO or OFF.
+     */
+    static LogLevel toLogLevel(String logLevel) {
+        switch (logLevel == null ? "INFO" : logLevel) {
+            case "ALL":
+                return LogLevel.TRACE;
+            case "OFF":
+                return LogLevel.NONE;
+            default:
+                return LogLevel.INFO;
+        }
+    }
+
+    @Override
+    protected boolean isLoggable(LogLevel level) {
+        if (level.ordinal() < minimum.ordinal() || level == LogLevel.NONE)
+            return false;
+        switch (level) {
+            case TRACE:
+                return delegate.isTraceEnabled();
+            case DEBUG:
+                return delegate.isDebugEnabled();
+            case INFO:
+                return delegate.isInfoEnabled();
+            case WARN:
+                return delegate.isWarnEnabled();
+            default:
+                return delegate.isErrorEnabled();
+        }
+    }
+
+    @Override
+    protected void write(LogLevel level, String msg, Object[] os, Throwable t) {
+        delegate.log(level, msg, os, t);
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+}
@@ -0,0 +1,63 @@
+package com.bonyansystem.processors.asn1;
+
+import org.apache.nifi.logging.LogLevel;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+ * ComponentLog over a java.util.logging Logger, for the parser classes outside NiFi: Main,
+ * tests and benchmarks. {} placeholders are filled in like NiFi does.
+ */
+public class JulComponentLog extends LeveledComponentLog {
+    static final JulComponentLog DEFAULT = new JulComponentLog(Logger.getLogger("com.bonyansystem"));
+    private final Logger logger;
+
+    public JulComponentLog(Logger logger) {
+        this.logger = logger;
+    }
+
+    private static Level toLevel(LogLevel level) {
+        switch (level) {
+            case TRACE:
+                return Level.FINEST;
+            case DEBUG:
+                return Level.FINE;
+            case INFO:
+                return Level.INFO;
+            case WARN:
+                return Level.WARNING;
+            case NONE:
+                return Level.OFF;
+            default:
+                return Level.SEVERE;
+        }
+    }
+
+    @Override
+    protected boolean isLoggable(LogLevel level) {
+        return level != LogLevel.NONE && logger.isLoggable(toLevel(level));
+    }
+
+    @Override
+    protected void write(LogLevel level, String msg, Object[] os, Throwable t) {
+        if (os != null && os.length > 0) {
+            StringBuilder text = new StringBuilder(msg.length() + 16 * os.length);
+            int start = 0;
+            for (Object o : os) {
+                int at = msg.indexOf("{}", start);
+                if (at < 0)
+                    break;
+                text.append(msg, start, at).append(o);
+                start = at + 2;
+            }
+            msg = text.append(msg, start, msg.length()).toString();
+        }
+        logger.log(toLevel(level), msg, t);
+    }
+
+    @Override
+    public String getName() {
+        return logger.getName();
+    }
+}
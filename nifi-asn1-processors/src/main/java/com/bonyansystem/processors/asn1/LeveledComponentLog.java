@@ -0,0 +1,161 @@
+package com.bonyansystem.processors.asn1;
+
+import org.apache.nifi.logging.ComponentLog;
+import org.apache.nifi.logging.LogLevel;
+
+/*
+ * ComponentLog implemented on top of isLoggable and write, so a subclass only decides which
+ * levels are on and where their messages go.
+ */
+abstract class LeveledComponentLog implements ComponentLog {
+
+    protected abstract boolean isLoggable(LogLevel level);
+
+    protected abstract void write(LogLevel level, String msg, Object[] os, Throwable t);
+
+    @Override
+    public void log(LogLevel level, String msg, Object[] os, Throwable t) {
+        if (isLoggable(level))
+            write(level, msg, os, t);
+    }
+
+    @Override
+    public void log(LogLevel level, String msg, Throwable t) {
+        log(level, msg, null, t);
+    }
+
+    @Override
+    public void log(LogLevel level, String msg, Object[] os) {
+        log(level, msg, os, null);
+    }
+
+    @Override
+    public void log(LogLevel level, String msg) {
+        log(level, msg, null, null);
+    }
+
+    @Override
+    public boolean isTraceEnabled() {
+        return isLoggable(LogLevel.TRACE);
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return isLoggable(LogLevel.DEBUG);
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return isLoggable(LogLevel.INFO);
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return isLoggable(LogLevel.WARN);
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return isLoggable(LogLevel.ERROR);
+    }
+
+    @Override
+    public void trace(String msg, Throwable t) {
+        log(LogLevel.TRACE, msg, null, t);
+    }
+
+    @Override
+    public void trace(String msg, Object[] os) {
+        log(LogLevel.TRACE, msg, os, null);
+    }
+
+    @Override
+    public void trace(String msg) {
+        log(LogLevel.TRACE, msg, null, null);
+    }
+
+    @Override
+    public void trace(String msg, Object[] os, Throwable t) {
+        log(LogLevel.TRACE, msg, os, t);
+    }
+
+    @Override
+    public void debug(String msg, Throwable t) {
+        log(LogLevel.DEBUG, msg, null, t);
+    }
+
+    @Override
+    public void debug(String msg, Object[] os) {
+        log(LogLevel.DEBUG, msg, os, null);
+    }
+
+    @Override
+    public void debug(String msg, Object[] os, Throwable t) {
+        log(LogLevel.DEBUG, msg, os, t);
+    }
+
+    @Override
+    public void debug(String msg) {
+        log(LogLevel.DEBUG, msg, null, null);
+    }
+
+    @Override
+    public void info(String msg, Throwable t) {
+        log(LogLevel.INFO, msg, null, t);
+    }
+
+    @Override
+    public void info(String msg, Object[] os) {
+        log(LogLevel.INFO, msg, os, null);
+    }
+
+    @Override
+    public void info(String msg) {
+        log(LogLevel.INFO, msg, null, null);
+    }
+
+    @Override
+    public void info(String msg, Object[] os, Throwable t) {
+        log(LogLevel.INFO, msg, os, t);
+    }
+
+    @Override
+    public void warn(String msg, Throwable t) {
+        log(LogLevel.WARN, msg, null, t);
+    }
+
+    @Override
+    public void warn(String msg, Object[] os) {
+        log(LogLevel.WARN, msg, os, null);
+    }
+
+    @Override
+    public void warn(String msg, Object[] os, Throwable t) {
+        log(LogLevel.WARN, msg, os, t);
+    }
+
+    @Override
+    public void warn(String msg) {
+        log(LogLevel.WARN, msg, null, null);
+    }
+
+    @Override
+    public void error(String msg, Throwable t) {
+        log(LogLevel.ERROR, msg, null, t);
+    }
+
+    @Override
+    public void error(String msg, Object[] os) {
+        log(LogLevel.ERROR, msg, os, null);
+    }
+
+    @Override
+    public void error(String msg) {
+        log(LogLevel.ERROR, msg, null, null);
+    }
+
+    @Override
+    public void error(String msg, Object[] os, Throwable t) {
+        log(LogLevel.ERROR, msg, os, t);
+    }
+}
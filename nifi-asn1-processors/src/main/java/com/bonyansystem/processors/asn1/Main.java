@@ -65,8 +65,15 @@ public class Main {
 
         Properties prop = readProperties(propertiesFile);
         File binaryFile = new File(prop.getProperty("INPUT_FILE"));
-        InputStream is = new FileInputStream(binaryFile);
-        BufferedInputStream bis = new BufferedInputStream(is);
+        StreamCompression inputCompression = StreamCompression.valueOf(prop.getProperty("INPUT_COMPRESSION", "NONE"));
+        StreamCompression outputCompression = StreamCompression.valueOf(prop.getProperty("OUTPUT_COMPRESSION", "NONE"));
+        int compressionLevel = Integer.parseInt(prop.getProperty("COMPRESSION_LEVEL", "0"));
+        int pipelineBuffers = Integer.parseInt(prop.getProperty("PIPELINE_BUFFERS", "0"));
+        InputStream input = inputCompression == StreamCompression.NONE ? null
+                : inputCompression.decompress(new FileInputStream(binaryFile));
+        if (input != null && pipelineBuffers > 0)
+            input = new ReadAheadInputStream(input, ReadAheadInputStream.DEFAULT_BLOCK_SIZE, pipelineBuffers);
+        BERReader reader = input == null ? new MappedBERReader(binaryFile) : new StreamBERReader(input, 64 * 1024);
 
         File csvFile = new File(prop.getProperty("OUTPUT_FILE"));
 
@@ -74,20 +81,42 @@ public class Main {
 
         logger.info("Input file: " + binaryFile.getAbsolutePath());
         logger.info("CSV file: " + csvFile.getAbsolutePath());
-        OutputStream os = new FileOutputStream(csvFile, false);
-        BufferedOutputStream bos = new BufferedOutputStream(os);
+        OutputStream os = outputCompression.compress(new FileOutputStream(csvFile, false), compressionLevel);
+        OutputStream bos = pipelineBuffers > 0
+                ? new WriteBehindOutputStream(os, ReadAheadInputStream.DEFAULT_BLOCK_SIZE, pipelineBuffers)
+                : new BufferedOutputStream(os);
 
         int recCount = 0;
+        int parseThreads = Integer.parseInt(prop.getProperty("PARSE_THREADS", "1"));
+        int spillThreshold = Integer.parseInt(prop.getProperty("SPILL_THRESHOLD", "0"));
         try {
-            ASN1CSVParser parser =
-                    new ASN1CSVParser(bis,
-                            prop.getProperty("SCHEMA"),
-                            prop.getProperty("DATA_TYPES"));
-            recCount += parser.parse(bos);
+            ASN1Schema schema = new ASN1Schema(prop.getProperty("SCHEMA"), prop.getProperty("DATA_TYPES"));
+            ASN1Filter filter = prop.getProperty("FILTER") == null ? null : new ASN1Filter(prop.getProperty("FILTER"), schema);
+            if (filter != null && spillThreshold > 0)
+                throw new Exception("FILTER cannot be used together with SPILL_THRESHOLD.");
+            ASN1ParseMetrics metrics = new ASN1ParseMetrics();
+            JulComponentLog log = new JulComponentLog(logger);
+            if (parseThreads > 1) {
+                ASN1ParallelParser parallelParser =
+                        new ASN1ParallelParser(schema, parseThreads, ASN1ParallelParser.DEFAULT_CHUNK_SIZE, log);
+                parallelParser.setSpillThreshold(spillThreshold);
+                parallelParser.setFilter(filter);
+                recCount += parallelParser.parse(reader, bos, metrics);
+            } else {
+                try (ASN1CSVParser parser = new ASN1CSVParser(reader, schema, log)) {
+                    parser.setSpillThreshold(spillThreshold);
+                    parser.setFilter(filter);
+                    recCount += parser.parse(bos);
+                    metrics = parser.getMetrics();
+                }
+            }
             logger.info("Total csv record extracted: " + recCount);
+            logger.info(metrics.toString());
             bos.close();
         }catch (Exception e){
             e.printStackTrace();
+        } finally {
+            reader.close();
         }
     }
 
@@ -0,0 +1,108 @@
+package com.bonyansystem.processors.asn1;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * BER reader over a memory mapped local file. A single mapping is limited to 2 GB, so
+ * larger files are mapped window by window as the position moves on.
+ *
+ * Captured values are not sliced in place. Cells are decoded from byte arrays, which a mapping
+ * does not have, so backingArray() is null and each captured value is copied once, with a bulk
+ * get from the mapping straight into the record set's slab. Values no column refers to are
+ * skipped by moving the position and never copied.
+ */
+public class MappedBERReader extends BERReader {
+    static final long DEFAULT_WINDOW_SIZE = 1L << 30;
+    private final FileChannel channel;
+    private final long size;
+    private final long windowSize;
+    private MappedByteBuffer buffer;
+    private long windowStart;
+    private int index;
+    private int limit;
+
+    public MappedBERReader(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedBERReader(File file, long windowSize) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        map(0);
+    }
+
+    private void map(long start) throws IOException {
+        long length = Math.min(windowSize, size - start);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        windowStart = start;
+        index = 0;
+        limit = (int) length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (index < limit)
+            return buffer.get(index++) & 0xff;
+        if (position() >= size)
+            return -1;
+        map(position());
+        return buffer.get(index++) & 0xff;
+    }
+
+    @Override
+    public void readFully(byte[] data, int offset, int length) throws IOException {
+        if (position() + length > size)
+            throw new EOFException("EOF found reading value. pos: " + position());
+
+        while (length > 0) {
+            if (index == limit)
+                map(position());
+            int n = Math.min(limit - index, length);
+            buffer.position(index);
+            buffer.get(data, offset, n);
+            index += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public void skip(long length) throws IOException {
+        long target = position() + length;
+        if (target > size)
+            throw new EOFException("EOF found skipping value. pos: " + position());
+
+        if (target - windowStart <= limit)
+            index = (int) (target - windowStart);
+        else
+            map(target);
+    }
+
+    @Override
+    public long skipAtMost(long length) throws IOException {
+        long n = Math.min(length, size - position());
+        skip(n);
+        return n;
+    }
+
+    @Override
+    public boolean hasRemaining() {
+        return position() < size;
+    }
+
+    @Override
+    public long position() {
+        return windowStart + index;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
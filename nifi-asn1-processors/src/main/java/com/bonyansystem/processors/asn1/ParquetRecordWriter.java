@@ -0,0 +1,271 @@
+package com.bonyansystem.processors.asn1;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Types;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+
+/*
+ * Writes the built rows of record sets as a Parquet file with typed columns, reading the cells
+ * straight from the record set. INTEGER is INT64, BOOLEAN is BOOLEAN, TBCD_STRING and IA5_STRING
+ * are dictionary encoded strings, OCTET_STRING is binary and IP_STRING and IPV6_STRING are the
+ * raw 4 and 16 byte addresses. Field names are those of ASN1RecordReader.
+ */
+class ParquetRecordWriter implements Closeable {
+    private final RowWriteSupport writeSupport;
+    private final ParquetWriter<Integer> writer;
+
+    ParquetRecordWriter(ASN1Schema schema, OutputStream outputStream, CompressionCodecName codec) throws IOException {
+        writeSupport = new RowWriteSupport(schema);
+        writer = new Builder(new StreamOutputFile(outputStream), writeSupport)
+                .withCompressionCodec(codec)
+                .withDictionaryEncoding(true)
+                .build();
+    }
+
+    /*
+     * Throws IllegalArgumentException when a cell of the record set cannot be written, so a record
+     * can be skipped before any of its rows reach the writer.
+     */
+    void check(ASN1RecordSet recordSet) {
+        for (int row = 0; row < recordSet.getRowCount(); row++)
+            writeSupport.check(recordSet, row);
+    }
+
+    void write(ASN1RecordSet recordSet) throws IOException {
+        writeSupport.recordSet = recordSet;
+        for (int row = 0; row < recordSet.getRowCount(); row++)
+            writer.write(row);
+    }
+
+    /*
+     * Writes the footer. The output stream is left open.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private static MessageType toMessageType(ASN1Schema schema, String[] names) {
+        Types.MessageTypeBuilder builder = Types.buildMessage();
+        for (int i = 0; i < names.length; i++) {
+            switch (schema.getDataType(i)) {
+                case INTEGER:
+                    builder.optional(PrimitiveTypeName.INT64).named(names[i]);
+                    break;
+                case BOOLEAN:
+                    builder.optional(PrimitiveTypeName.BOOLEAN).named(names[i]);
+                    break;
+                case TBCD_STRING:
+                case IA5_STRING:
+                    builder.optional(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named(names[i]);
+                    break;
+                case IP_STRING:
+                    builder.optional(PrimitiveTypeName.FIXED_LEN_BYTE_ARRAY).length(4).named(names[i]);
+                    break;
+                case IPV6_STRING:
+                    builder.optional(PrimitiveTypeName.FIXED_LEN_BYTE_ARRAY).length(16).named(names[i]);
+                    break;
+                default:
+                    builder.optional(PrimitiveTypeName.BINARY).named(names[i]);
+            }
+        }
+        return builder.named("asn1");
+    }
+
+    /*
+     * Writes row numbers of the current record set, so no row objects are created.
+     */
+    private static class RowWriteSupport extends WriteSupport<Integer> {
+        private final ASN1Schema schema;
+        private final DataType[] dataTypes;
+        private final String[] names;
+        private final ByteSink text = new ByteSink(64);
+        private RecordConsumer consumer;
+        ASN1RecordSet recordSet;
+
+        RowWriteSupport(ASN1Schema schema) {
+            this.schema = schema;
+            this.dataTypes = new DataType[schema.getColumnCount()];
+            this.names = new String[dataTypes.length];
+            for (int i = 0; i < dataTypes.length; i++) {
+                dataTypes[i] = schema.getDataType(i);
+                names[i] = ASN1RecordReader.toFieldName(schema.getHeader(i).getHeaderName());
+            }
+        }
+
+        @Override
+        public WriteContext init(Configuration configuration) {
+            return new WriteContext(toMessageType(schema, names), Collections.<String, String>emptyMap());
+        }
+
+        @Override
+        public void prepareForWrite(RecordConsumer recordConsumer) {
+            this.consumer = recordConsumer;
+        }
+
+        void check(ASN1RecordSet recordSet, int row) {
+            for (int i = 0; i < dataTypes.length; i++) {
+                int length = recordSet.cellLength(row, i);
+                if (length >= 0)
+                    checkValue(recordSet.cellData(row, i), recordSet.cellOffset(row, i), length, i);
+            }
+        }
+
+        @Override
+        public void write(Integer row) {
+            consumer.startMessage();
+            for (int i = 0; i < dataTypes.length; i++) {
+                int length = recordSet.cellLength(row, i);
+                if (length < 0)
+                    continue;
+                consumer.startField(names[i], i);
+                writeValue(recordSet.cellData(row, i), recordSet.cellOffset(row, i), length, i);
+                consumer.endField(names[i], i);
+            }
+            consumer.endMessage();
+        }
+
+        /*
+         * Throws for a value its column type cannot hold. TBCD_STRING is decoded into text.
+         */
+        private void checkValue(byte[] data, int offset, int length, int col) {
+            switch (dataTypes[col]) {
+                case INTEGER:
+                    if (length == 0 || length > 8)
+                        throw new IllegalArgumentException("INTEGER of " + length + " bytes does not fit in INT64. column=" + names[col]);
+                    break;
+                case BOOLEAN:
+                    if (length == 0)
+                        throw new IllegalArgumentException("Invalid BOOLEAN data. column=" + names[col]);
+                    break;
+                case TBCD_STRING:
+                    try {
+                        text.reset();
+                        dataTypes[col].getCodec().encode(data, offset, length, text);
+                    } catch (Exception e) {
+                        throw new IllegalArgumentException(e.getMessage() + " column=" + names[col], e);
+                    }
+                    break;
+                case IP_STRING:
+                case IPV6_STRING:
+                    int size = dataTypes[col] == DataType.IP_STRING ? 4 : 16;
+                    if (length != size)
+                        throw new IllegalArgumentException("Invalid " + dataTypes[col] + " length:" + length + " column=" + names[col]);
+                    break;
+            }
+        }
+
+        private void writeValue(byte[] data, int offset, int length, int col) {
+            checkValue(data, offset, length, col);
+            switch (dataTypes[col]) {
+                case INTEGER:
+                    long value = data[offset]; // sign extended
+                    for (int i = offset + 1; i < offset + length; i++)
+                        value = (value << 8) | (data[i] & 0xff);
+                    consumer.addLong(value);
+                    break;
+                case BOOLEAN:
+                    consumer.addBoolean(data[offset] == (byte) 0xff);
+                    break;
+                case TBCD_STRING:
+                    consumer.addBinary(Binary.fromReusedByteArray(text.buf, 0, text.size()));
+                    break;
+                default:
+                    consumer.addBinary(Binary.fromReusedByteArray(data, offset, length));
+            }
+        }
+    }
+
+    private static class Builder extends ParquetWriter.Builder<Integer, Builder> {
+        private final RowWriteSupport writeSupport;
+
+        Builder(OutputFile file, RowWriteSupport writeSupport) {
+            super(file);
+            this.writeSupport = writeSupport;
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<Integer> getWriteSupport(Configuration conf) {
+            return writeSupport;
+        }
+    }
+
+    /*
+     * Parquet output over a stream such as FlowFile content, which is written front to back only.
+     */
+    private static class StreamOutputFile implements OutputFile {
+        private final OutputStream outputStream;
+
+        StreamOutputFile(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        @Override
+        public PositionOutputStream create(long blockSizeHint) {
+            return new PositionOutputStream() {
+                private long position;
+
+                @Override
+                public long getPos() {
+                    return position;
+                }
+
+                @Override
+                public void write(int b) throws IOException {
+                    outputStream.write(b);
+                    position++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    outputStream.write(b, off, len);
+                    position += len;
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    outputStream.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    outputStream.flush();
+                }
+            };
+        }
+
+        @Override
+        public PositionOutputStream createOrOverwrite(long blockSizeHint) {
+            return create(blockSizeHint);
+        }
+
+        @Override
+        public boolean supportsBlockSize() {
+            return false;
+        }
+
+        @Override
+        public long defaultBlockSize() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.bonyansystem.processors.asn1;
+
+import java.lang.reflect.Method;
+
+/*
+ * Starts the threads of the read-ahead and write-behind stages. On Java 21 and later they are
+ * virtual threads, which cost next to nothing to start once per FlowFile and leave the carrier
+ * while blocked on the content repository. Older runtimes get daemon platform threads. Resolved
+ * by reflection since the build targets Java 8.
+ */
+final class PipelineThreads {
+    private static final Object VIRTUAL_BUILDER;
+    private static final Method NAME;
+    private static final Method START;
+
+    static {
+        Object builder = null;
+        Method name = null;
+        Method start = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            name = builderClass.getMethod("name", String.class);
+            start = builderClass.getMethod("start", Runnable.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            builder = null;
+        }
+        VIRTUAL_BUILDER = builder;
+        NAME = name;
+        START = start;
+    }
+
+    private PipelineThreads() {
+    }
+
+    static boolean isVirtual() {
+        return VIRTUAL_BUILDER != null;
+    }
+
+    static Thread start(String name, Runnable task) {
+        if (VIRTUAL_BUILDER != null) {
+            try {
+                // the builder is not thread safe, name() sets its state before start() reads it
+                synchronized (VIRTUAL_BUILDER) {
+                    return (Thread) START.invoke(NAME.invoke(VIRTUAL_BUILDER, name), task);
+                }
+            } catch (ReflectiveOperationException e) {
+                // fall through to a platform thread
+            }
+        }
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
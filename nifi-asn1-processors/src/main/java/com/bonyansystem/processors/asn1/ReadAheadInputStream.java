@@ -0,0 +1,141 @@
+package com.bonyansystem.processors.asn1;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * Reads the source on its own thread into a ring of blocks while the caller decodes the blocks
+ * already read, so content repository reads and decompression overlap with parsing. At most
+ * blocks blocks of blockSize bytes are held, the reader thread waits while all of them are full.
+ * Read by one thread only.
+ */
+class ReadAheadInputStream extends InputStream {
+    static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+    private static final Block END = new Block(null, 0, null);
+
+    private final InputStream source;
+    private final BlockingQueue<byte[]> free;
+    private final BlockingQueue<Block> filled;
+    private final Thread thread;
+    private volatile boolean closed;
+    private Block current;
+    private int position;
+
+    ReadAheadInputStream(InputStream source, int blockSize, int blocks) {
+        this.source = source;
+        this.free = new ArrayBlockingQueue<>(blocks + 1);
+        this.filled = new ArrayBlockingQueue<>(blocks + 1); //room for the end or error after every block
+        for (int i = 0; i < blocks; i++)
+            free.add(new byte[blockSize]);
+        this.thread = PipelineThreads.start("ASN.1 read-ahead", this::readAhead);
+    }
+
+    private void readAhead() {
+        try {
+            while (true) {
+                byte[] data = free.take();
+                if (closed)
+                    return;
+                int length = 0;
+                for (int n; length < data.length && (n = source.read(data, length, data.length - length)) >= 0; )
+                    length += n;
+                if (length > 0)
+                    filled.put(new Block(data, length, null));
+                if (length < data.length) {
+                    filled.put(END);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            filled.offer(new Block(null, 0, new InterruptedIOException("Read-ahead interrupted.")));
+        } catch (Throwable e) {
+            filled.offer(new Block(null, 0, e));
+        }
+    }
+
+    /*
+     * Next filled block, null at the end of the source.
+     */
+    private Block next() throws IOException {
+        if (current != null) {
+            if (current == END)
+                return null;
+            if (current.error != null)
+                throw toIOException(current.error);
+            free.add(current.data);
+        }
+        try {
+            current = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for read-ahead.");
+        }
+        position = 0;
+        if (current.error != null)
+            throw toIOException(current.error);
+        return current == END ? null : current;
+    }
+
+    private static IOException toIOException(Throwable error) {
+        return error instanceof IOException ? (IOException) error : new IOException("Read-ahead failed.", error);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if ((current == null || position == current.length) && next() == null)
+            return -1;
+        return current.data[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if ((current == null || position == current.length) && next() == null)
+            return -1;
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current.data, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null || current == END ? 0 : current.length - position;
+    }
+
+    /*
+     * Stops the reader thread and closes the source, also when not read to the end.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        // wakes the reader thread if it waits for a free block
+        free.offer(new byte[0]);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while stopping read-ahead.");
+        } finally {
+            source.close();
+        }
+    }
+
+    private static class Block {
+        final byte[] data;
+        final int length;
+        final Throwable error;
+
+        Block(byte[] data, int length, Throwable error) {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+}
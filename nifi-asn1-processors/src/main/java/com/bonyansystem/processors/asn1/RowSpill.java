@@ -0,0 +1,220 @@
+package com.bonyansystem.processors.asn1;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/*
+ * Temp file holding the rows a record set has spilled. A row is its cells in column order, each
+ * written as its length plus one in a base 128 varint followed by the value, 0 for an empty cell.
+ * The file is truncated and reused for every top level record, and deleted on close.
+ *
+ * Values captured for a spilled row after it was written go to a patch file of their column, in
+ * row order as a column is filled row by row, and replace the cell as the row is read back.
+ */
+class RowSpill implements Closeable {
+    private static final int PATCH_BUFFER_SIZE = 8 * 1024;
+
+    private final FileChannel channel;
+    private final ByteSink out;
+    private final StreamBERReader in;
+    private final byte[][] cellData;
+    private final int[] cellOffsets;
+    private final int[] cellLengths;
+    private final PatchFile[] patchFiles; //per column, created with its first patch
+    private byte[] row = new byte[1024];
+    private int rowsRead;
+
+    RowSpill(int columnCount) throws IOException {
+        channel = openTempFile("asn1-rows");
+        out = new ByteSink(Channels.newOutputStream(channel), ByteSink.DEFAULT_SIZE);
+        in = new StreamBERReader(null, ByteSink.DEFAULT_SIZE);
+        cellData = new byte[columnCount][];
+        cellOffsets = new int[columnCount];
+        cellLengths = new int[columnCount];
+        patchFiles = new PatchFile[columnCount];
+    }
+
+    private static FileChannel openTempFile(String prefix) throws IOException {
+        File file = File.createTempFile(prefix, ".spill");
+        return FileChannel.open(file.toPath(), READ, WRITE, DELETE_ON_CLOSE);
+    }
+
+    /*
+     * Drops the rows of the previous record.
+     */
+    void clear() throws IOException {
+        out.reset();
+        channel.truncate(0);
+        channel.position(0);
+        for (PatchFile patchFile : patchFiles) {
+            if (patchFile != null)
+                patchFile.clear();
+        }
+    }
+
+    void writeCell(byte[] data, int offset, int length) throws IOException {
+        out.writeVarint(length + 1);
+        if (length > 0)
+            out.write(data, offset, length);
+    }
+
+    void writeEmptyCell() throws IOException {
+        out.write(0);
+    }
+
+    /*
+     * Keeps the value of a spilled row's cell, to be written after the patches of the column
+     * for earlier rows.
+     */
+    void writePatch(int colNum, int row, byte[] data, int offset, int length) throws IOException {
+        if (patchFiles[colNum] == null)
+            patchFiles[colNum] = new PatchFile();
+        patchFiles[colNum].write(row, data, offset, length);
+    }
+
+    /*
+     * Starts reading the rows back from the first one.
+     */
+    void rewind() throws IOException {
+        out.drain();
+        channel.position(0);
+        in.reset(Channels.newInputStream(channel));
+        rowsRead = 0;
+        for (PatchFile patchFile : patchFiles) {
+            if (patchFile != null)
+                patchFile.rewind();
+        }
+    }
+
+    void readRow() throws IOException {
+        int used = 0;
+        for (int i = 0; i < cellLengths.length; i++) {
+            int length = readVarint(in) - 1;
+            cellLengths[i] = length;
+            if (length < 0)
+                continue;
+            if (length > row.length - used)
+                growRow(used, length);
+            in.readFully(row, used, length);
+            cellOffsets[i] = used;
+            used += length;
+        }
+        for (int i = 0; i < cellLengths.length; i++) {
+            cellData[i] = row;
+            if (patchFiles[i] != null && patchFiles[i].readValue(rowsRead))
+                setCell(i, patchFiles[i].value, 0, patchFiles[i].length);
+        }
+        rowsRead++;
+    }
+
+    private void growRow(int used, int length) {
+        byte[] grown = new byte[Math.max(row.length * 2, used + length)];
+        System.arraycopy(row, 0, grown, 0, used);
+        row = grown;
+    }
+
+    private static int readVarint(StreamBERReader in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0)
+                throw new EOFException("EOF found reading spilled row.");
+            value |= (b & 0x7f) << shift;
+            if (b < 0x80)
+                return value;
+        }
+    }
+
+    /*
+     * Replaces a cell of the row just read, for values captured after the row was spilled.
+     */
+    void setCell(int colNum, byte[] data, int offset, int length) {
+        cellData[colNum] = data;
+        cellOffsets[colNum] = offset;
+        cellLengths[colNum] = length;
+    }
+
+    byte[] cellData(int colNum) {
+        return cellData[colNum];
+    }
+
+    int cellOffset(int colNum) {
+        return cellOffsets[colNum];
+    }
+
+    /*
+     * Value length of a cell of the row just read, negative for an empty cell.
+     */
+    int cellLength(int colNum) {
+        return cellLengths[colNum];
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        for (PatchFile patchFile : patchFiles) {
+            if (patchFile != null)
+                patchFile.channel.close();
+        }
+    }
+
+    /*
+     * Patches of one column, each the row as a varint followed by the value written like a cell.
+     */
+    private static class PatchFile {
+        final FileChannel channel;
+        final ByteSink out;
+        final StreamBERReader in;
+        byte[] value = new byte[64];
+        int length;
+        int nextRow; //row of the next patch to read, -1 after the last one
+
+        PatchFile() throws IOException {
+            channel = openTempFile("asn1-patches");
+            out = new ByteSink(Channels.newOutputStream(channel), PATCH_BUFFER_SIZE);
+            in = new StreamBERReader(null, PATCH_BUFFER_SIZE);
+        }
+
+        void clear() throws IOException {
+            out.reset();
+            channel.truncate(0);
+            channel.position(0);
+        }
+
+        void write(int row, byte[] data, int offset, int length) throws IOException {
+            out.writeVarint(row);
+            out.writeVarint(length + 1);
+            if (length > 0)
+                out.write(data, offset, length);
+        }
+
+        void rewind() throws IOException {
+            out.drain();
+            channel.position(0);
+            in.reset(Channels.newInputStream(channel));
+            nextRow = in.hasRemaining() ? readVarint(in) : -1;
+        }
+
+        /*
+         * Reads the value patched into row, false when the row has no patch in this column.
+         */
+        boolean readValue(int row) throws IOException {
+            if (nextRow != row)
+                return false;
+            length = readVarint(in) - 1;
+            if (length > value.length)
+                value = new byte[Math.max(value.length * 2, length)];
+            in.readFully(value, 0, length);
+            nextRow = in.hasRemaining() ? readVarint(in) : -1;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bonyansystem.processors.asn1;
+
+import org.apache.nifi.annotation.behavior.SupportsBatching;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.DataUnit;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.ProcessorInitializationContext;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.util.StandardValidators;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+@Tags({"ASN1Processor", "ASN.1", "BER", "split"})
+@CapabilityDescription("Splits ASN.1 BER content on top level record boundaries into FlowFiles of at most a number of " +
+        "records and/or bytes, e.g. to decode the parts of a large file with ASN1Processor on several nodes. Only the " +
+        "tag and length of each record are read, the splits reference the content of the original FlowFile.")
+@SeeAlso({ASN1Processor.class})
+@WritesAttributes({@WritesAttribute(attribute = "fragment.identifier", description = "Same for all splits of one FlowFile."),
+        @WritesAttribute(attribute = "fragment.index", description = "Position of the split, starting at 0."),
+        @WritesAttribute(attribute = "fragment.count", description = "Number of splits of the FlowFile."),
+        @WritesAttribute(attribute = "segment.original.filename", description = "Filename of the original FlowFile."),
+        @WritesAttribute(attribute = "RecordCount", description = "Number of top level records in the split."),
+        @WritesAttribute(attribute = "RecordOffset", description = "Offset of the split in the original content.")})
+@SupportsBatching
+public class SplitASN1 extends AbstractProcessor {
+    public static final PropertyDescriptor RECORDS_PER_SPLIT = new PropertyDescriptor
+            .Builder().name("RECORDS_PER_SPLIT")
+            .displayName("Records Per Split")
+            .description("Maximum number of top level records in a split.")
+            .required(false)
+            .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+            .build();
+
+    public static final PropertyDescriptor BYTES_PER_SPLIT = new PropertyDescriptor
+            .Builder().name("BYTES_PER_SPLIT")
+            .displayName("Bytes Per Split")
+            .description("Maximum size of a split. A record larger than this is a split of its own.")
+            .required(false)
+            .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+            .build();
+
+    public static final Relationship SPLITS = new Relationship.Builder()
+            .name("Splits")
+            .description("Parts of the content on record boundaries.")
+            .build();
+
+    public static final Relationship ORIGINAL = new Relationship.Builder()
+            .name("Original")
+            .description("The FlowFile that was split.")
+            .build();
+
+    public static final Relationship FAILURE = new Relationship.Builder()
+            .name("Failure")
+            .description("Content whose record headers could not be read.")
+            .build();
+
+    private List<PropertyDescriptor> descriptors;
+
+    private Set<Relationship> relationships;
+
+    @Override
+    protected void init(final ProcessorInitializationContext context) {
+        final List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>();
+        descriptors.add(RECORDS_PER_SPLIT);
+        descriptors.add(BYTES_PER_SPLIT);
+        descriptors.add(ASN1Processor.BUFFER_SIZE);
+        this.descriptors = Collections.unmodifiableList(descriptors);
+
+        final Set<Relationship> relationships = new HashSet<Relationship>();
+        relationships.add(SPLITS);
+        relationships.add(ORIGINAL);
+        relationships.add(FAILURE);
+        this.relationships = Collections.unmodifiableSet(relationships);
+    }
+
+    @Override
+    public Set<Relationship> getRelationships() {
+        return this.relationships;
+    }
+
+    @Override
+    public final List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+        return descriptors;
+    }
+
+    @Override
+    protected Collection<ValidationResult> customValidate(final ValidationContext context) {
+        if (context.getProperty(RECORDS_PER_SPLIT).getValue() == null && context.getProperty(BYTES_PER_SPLIT).getValue() == null)
+            return Collections.singletonList(new ValidationResult.Builder()
+                    .subject(RECORDS_PER_SPLIT.getDisplayName())
+                    .valid(false)
+                    .explanation("Records Per Split or Bytes Per Split is required")
+                    .build());
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void onTrigger(final ProcessContext context, final ProcessSession session) throws ProcessException {
+        FlowFile flowFile = session.get();
+        if (flowFile == null) {
+            return;
+        }
+
+        ASN1RecordIndex index;
+        try (InputStream inputStream = session.read(flowFile)) {
+            index = ASN1RecordIndex.build(new StreamBERReader(inputStream,
+                    context.getProperty(ASN1Processor.BUFFER_SIZE).asInteger() * 1024));
+        } catch (Exception e) {
+            getLogger().error("ASN.1 Error while indexing records.", e);
+            session.transfer(flowFile, FAILURE);
+            return;
+        }
+
+        int maxRecords = context.getProperty(RECORDS_PER_SPLIT).isSet()
+                ? context.getProperty(RECORDS_PER_SPLIT).asInteger() : 0;
+        long maxBytes = context.getProperty(BYTES_PER_SPLIT).isSet()
+                ? context.getProperty(BYTES_PER_SPLIT).asDataSize(DataUnit.B).longValue() : 0;
+        List<FlowFile> splits = new ArrayList<>();
+        String fragmentId = UUID.randomUUID().toString();
+        String filename = flowFile.getAttribute(CoreAttributes.FILENAME.key());
+        for (int from = 0; from < index.getRecordCount(); ) {
+            int to = index.nextSplit(from, maxRecords, maxBytes);
+            // the split shares the content claim of the original
+            FlowFile split = session.clone(flowFile, index.getOffset(from), index.getLength(from, to));
+            split = session.putAttribute(split, "fragment.identifier", fragmentId);
+            split = session.putAttribute(split, "fragment.index", Integer.toString(splits.size()));
+            split = session.putAttribute(split, "segment.original.filename", filename == null ? "" : filename);
+            split = session.putAttribute(split, "RecordCount", Integer.toString(to - from));
+            split = session.putAttribute(split, "RecordOffset", Long.toString(index.getOffset(from)));
+            splits.add(split);
+            from = to;
+        }
+        for (int i = 0; i < splits.size(); i++)
+            splits.set(i, session.putAttribute(splits.get(i), "fragment.count", Integer.toString(splits.size())));
+
+        if (getLogger().isDebugEnabled())
+            getLogger().debug("Split " + index.getRecordCount() + " records into " + splits.size() + " FlowFiles.");
+        session.transfer(splits, SPLITS);
+        session.transfer(flowFile, ORIGINAL);
+    }
+}
@@ -0,0 +1,127 @@
+package com.bonyansystem.processors.asn1;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+ * BER reader over an InputStream such as NiFi FlowFile content. Buffers on its own instead
+ * of going through the synchronized BufferedInputStream methods for every byte.
+ */
+public class StreamBERReader extends BERReader {
+    private InputStream inputStream;
+    private final byte[] buffer;
+    private int index;
+    private int count;
+    private long bufferStart;
+
+    public StreamBERReader(InputStream inputStream, int bufferSize) {
+        this.inputStream = inputStream;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /*
+     * Starts over on another stream, keeping the buffer.
+     */
+    void reset(InputStream inputStream) {
+        this.inputStream = inputStream;
+        index = 0;
+        count = 0;
+        bufferStart = 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (index < count)
+            return buffer[index++] & 0xff;
+        if (!fill())
+            return -1;
+        return buffer[index++] & 0xff;
+    }
+
+    @Override
+    public void readFully(byte[] data, int offset, int length) throws IOException {
+        int buffered = Math.min(count - index, length);
+        System.arraycopy(buffer, index, data, offset, buffered);
+        index += buffered;
+        offset += buffered;
+        length -= buffered;
+
+        if (length >= buffer.length) {
+            // large values go straight to the caller's array
+            while (length > 0) {
+                int n = inputStream.read(data, offset, length);
+                if (n < 0)
+                    throw new EOFException("EOF found reading value. pos: " + position());
+                bufferStart += n;
+                offset += n;
+                length -= n;
+            }
+            return;
+        }
+        while (length > 0) {
+            if (!fill())
+                throw new EOFException("EOF found reading value. pos: " + position());
+            int n = Math.min(count, length);
+            System.arraycopy(buffer, 0, data, offset, n);
+            index = n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public void skip(long length) throws IOException {
+        int buffered = (int) Math.min(count - index, length);
+        index += buffered;
+        length -= buffered;
+
+        while (length > 0) {
+            long n = inputStream.skip(length);
+            if (n <= 0) {
+                if (inputStream.read() < 0)
+                    throw new EOFException("EOF found skipping value. pos: " + position());
+                n = 1;
+            }
+            bufferStart += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public long skipAtMost(long length) throws IOException {
+        long start = position();
+        try {
+            skip(length);
+        } catch (EOFException e) {
+            // skip counts what it got past, the position is the end of input
+        }
+        return position() - start;
+    }
+
+    @Override
+    public boolean hasRemaining() throws IOException {
+        return index < count || fill();
+    }
+
+    @Override
+    public long position() {
+        return bufferStart + index;
+    }
+
+    private boolean fill() throws IOException {
+        bufferStart += count;
+        index = 0;
+        count = 0;
+        int n = inputStream.read(buffer, 0, buffer.length);
+        if (n <= 0)
+            return false;
+        count = n;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
@@ -0,0 +1,95 @@
+package com.bonyansystem.processors.asn1;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+ * Compression of the input and output streams, applied while the content streams through so
+ * neither the decompressed input nor the uncompressed output is stored. Level is the gzip and
+ * zstd compression level, the bzip2 block size in 100k units, and ignored for lz4. A level of
+ * 0 or less takes the codec default.
+ */
+public enum StreamCompression {
+    NONE {
+        @Override
+        public InputStream decompress(InputStream inputStream) {
+            return inputStream;
+        }
+
+        @Override
+        public OutputStream compress(OutputStream outputStream, int level) {
+            return outputStream;
+        }
+    },
+    GZIP {
+        @Override
+        public InputStream decompress(InputStream inputStream) throws IOException {
+            return new GZIPInputStream(inputStream, 64 * 1024);
+        }
+
+        @Override
+        public OutputStream compress(OutputStream outputStream, final int level) throws IOException {
+            return new GZIPOutputStream(outputStream, 64 * 1024) {
+                {
+                    if (level > 0)
+                        def.setLevel(level);
+                }
+            };
+        }
+    },
+    BZIP2 {
+        @Override
+        public InputStream decompress(InputStream inputStream) throws IOException {
+            return new BZip2CompressorInputStream(inputStream, true);
+        }
+
+        @Override
+        public OutputStream compress(OutputStream outputStream, int level) throws IOException {
+            return level > 0
+                    ? new BZip2CompressorOutputStream(outputStream, level) : new BZip2CompressorOutputStream(outputStream);
+        }
+    },
+    ZSTD {
+        @Override
+        public InputStream decompress(InputStream inputStream) throws IOException {
+            return new ZstdCompressorInputStream(inputStream);
+        }
+
+        @Override
+        public OutputStream compress(OutputStream outputStream, int level) throws IOException {
+            return level > 0
+                    ? new ZstdCompressorOutputStream(outputStream, level) : new ZstdCompressorOutputStream(outputStream);
+        }
+    },
+    LZ4 {
+        @Override
+        public InputStream decompress(InputStream inputStream) throws IOException {
+            return new FramedLZ4CompressorInputStream(inputStream, true);
+        }
+
+        @Override
+        public OutputStream compress(OutputStream outputStream, int level) throws IOException {
+            return new FramedLZ4CompressorOutputStream(outputStream);
+        }
+    };
+
+    /*
+     * Closing the returned stream closes inputStream.
+     */
+    public abstract InputStream decompress(InputStream inputStream) throws IOException;
+
+    /*
+     * Closing the returned stream finishes the compressed data and closes outputStream.
+     */
+    public abstract OutputStream compress(OutputStream outputStream, int level) throws IOException;
+}
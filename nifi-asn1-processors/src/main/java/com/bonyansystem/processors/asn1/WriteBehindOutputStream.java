@@ -0,0 +1,146 @@
+package com.bonyansystem.processors.asn1;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * Buffers the output in a ring of blocks written to the target on its own thread, so encoding
+ * goes on while full blocks are compressed and written to the content repository. The caller
+ * waits only when all blocks are waiting to be written. A failed write is thrown by the next
+ * write, flush or close. Written by one thread only.
+ */
+class WriteBehindOutputStream extends OutputStream {
+    private static final byte[] END = new byte[0];
+
+    private final OutputStream target;
+    private final BlockingQueue<byte[]> free;
+    private final BlockingQueue<Block> filled;
+    private final Thread thread;
+    private volatile Throwable error;
+    private byte[] current;
+    private int count;
+    private boolean closed;
+    private boolean errorThrown;
+
+    WriteBehindOutputStream(OutputStream target, int blockSize, int blocks) {
+        this.target = target;
+        this.free = new ArrayBlockingQueue<>(blocks);
+        this.filled = new ArrayBlockingQueue<>(blocks + 1); //room for the end after every block
+        for (int i = 1; i < blocks; i++)
+            free.add(new byte[blockSize]);
+        this.current = new byte[blockSize];
+        this.thread = PipelineThreads.start("ASN.1 write-behind", this::writeBehind);
+    }
+
+    private void writeBehind() {
+        try {
+            while (true) {
+                Block block = filled.take();
+                if (block.data == END)
+                    return;
+                // after a failure the blocks are only handed back, so the caller never waits forever
+                if (error == null) {
+                    try {
+                        target.write(block.data, 0, block.length);
+                    } catch (Throwable e) {
+                        error = e;
+                    }
+                }
+                free.put(block.data);
+            }
+        } catch (InterruptedException e) {
+            error = new InterruptedIOException("Write-behind interrupted.");
+        }
+    }
+
+    private void checkError() throws IOException {
+        Throwable error = this.error;
+        errorThrown = error != null;
+        if (error instanceof IOException)
+            throw (IOException) error;
+        if (error != null)
+            throw new IOException("Write-behind failed.", error);
+    }
+
+    /*
+     * Hands the current block to the writer thread and takes a free one.
+     */
+    private void handOver() throws IOException {
+        checkError();
+        try {
+            filled.put(new Block(current, count));
+            current = free.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for write-behind.");
+        }
+        count = 0;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == current.length)
+            handOver();
+        current[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == current.length)
+                handOver();
+            int n = Math.min(len, current.length - count);
+            System.arraycopy(b, off, current, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /*
+     * Passes the buffered bytes on to the writer thread, the target is flushed on close.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (count > 0)
+            handOver();
+        checkError();
+    }
+
+    /*
+     * Waits for the blocks to be written and closes the target.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (count > 0 && error == null)
+                filled.put(new Block(current, count));
+            filled.put(new Block(END, 0));
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for write-behind.");
+        } finally {
+            target.close();
+        }
+        // not again after write or flush threw it, e.g. closed by try-with-resources
+        if (!errorThrown)
+            checkError();
+    }
+
+    private static class Block {
+        final byte[] data;
+        final int length;
+
+        Block(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package com.bonyansystem.processors.asn1;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ASN1CSVParserTest {
+    private static final String NL = System.lineSeparator();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /*
+     * 79 {
+     *   22: 0x21 0x43 0xf5 (TBCD 12345)
+     *   19 { 2 { SEQUENCE { 1: 0x01, 2: 0x0a }, SEQUENCE { 1: 0x02, 2: 0x14 } } }
+     *   34 { SEQUENCE { 1: 0x07 } }
+     *   5 { 6: 0x00 } (not in schema)
+     * }
+     */
+    static byte[] sampleRecord() {
+        return tlv(0xBF, 79,
+                tlv(0x80, 22, bytes(0x21, 0x43, 0xF5)),
+                tlv(0xA0 | 19, -1,
+                        tlv(0xA0 | 2, -1,
+                                tlv(0x30, -1, tlv(0x81, -1, bytes(0x01)), tlv(0x82, -1, bytes(0x0A))),
+                                tlv(0x30, -1, tlv(0x81, -1, bytes(0x02)), tlv(0x82, -1, bytes(0x14))))),
+                tlv(0xA0, 34, tlv(0x30, -1, tlv(0x81, -1, bytes(0x07)))),
+                tlv(0xA0 | 5, -1, tlv(0x86, -1, bytes(0x00))));
+    }
+
+    static byte[] bytes(int... values) {
+        byte[] b = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+            b[i] = (byte) values[i];
+        return b;
+    }
+
+    /*
+     * Builds a definite length TLV. A high tag number (>= 31) is passed with the 0x1F
+     * identifier, otherwise tagNo is -1 and the number is part of the identifier octet.
+     */
+    static byte[] tlv(int identifier, int tagNo, byte[]... contents) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (byte[] c : contents)
+            content.write(c, 0, c.length);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (tagNo >= 31) {
+            out.write(identifier | 0x1F);
+            if (tagNo >= 128)
+                out.write(0x80 | (tagNo >> 7));
+            out.write(tagNo & 0x7F);
+        } else if (tagNo >= 0) {
+            out.write(identifier & 0xE0 | tagNo);
+        } else {
+            out.write(identifier);
+        }
+
+        int length = content.size();
+        if (length < 128) {
+            out.write(length);
+        } else {
+            out.write(0x82);
+            out.write(length >> 8);
+            out.write(length & 0xFF);
+        }
+        byte[] c = content.toByteArray();
+        out.write(c, 0, c.length);
+        return out.toByteArray();
+    }
+
+    /*
+     * Builds an indefinite length TLV terminated by end-of-contents octets.
+     */
+    static byte[] indefinite(int identifier, int tagNo, byte[]... contents) {
+        byte[] definite = tlv(identifier, tagNo, new byte[0]);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(definite, 0, definite.length - 1);
+        out.write(0x80);
+        for (byte[] c : contents)
+            out.write(c, 0, c.length);
+        out.write(0);
+        out.write(0);
+        return out.toByteArray();
+    }
+
+    static String parse(byte[] input, String schema, String dataTypes) throws Exception {
+        return parse(new StreamBERReader(new ByteArrayInputStream(input), 16), schema, dataTypes);
+    }
+
+    static String parse(BERReader reader, String schema, String dataTypes) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BufferedOutputStream bos = new BufferedOutputStream(out);
+        ASN1CSVParser parser = new ASN1CSVParser(reader, schema, dataTypes);
+        parser.parse(bos);
+        bos.flush();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testMasterAndIteratedColumns() throws Exception {
+        String csv = parse(sampleRecord(),
+                "REC_NO,SUB_SEQ,MULTI_RECORD,79.22,79.19.2.*.1,79.19.2.*.2",
+                "INTEGER,INTEGER,INTEGER,TBCD_STRING,INTEGER,INTEGER");
+
+        assertEquals("1,1,1,12345,1,10" + NL +
+                "2,2,1,12345,2,20" + NL, csv);
+    }
+
+    @Test
+    public void testExplicitSequenceColumn() throws Exception {
+        String csv = parse(sampleRecord(),
+                "79.34.*[0].1,79.19.2.*.2",
+                "INTEGER,INTEGER");
+
+        assertEquals("7,10" + NL + "7,20" + NL, csv);
+    }
+
+    @Test
+    public void testRecordNumbersContinueAcrossRecords() throws Exception {
+        byte[] record = sampleRecord();
+        byte[] input = new byte[record.length * 2];
+        System.arraycopy(record, 0, input, 0, record.length);
+        System.arraycopy(record, 0, input, record.length, record.length);
+
+        String csv = parse(input, "REC_NO,79.22", "INTEGER,TBCD_STRING");
+
+        assertEquals("1,12345" + NL + "2,12345" + NL, csv);
+    }
+
+    @Test
+    public void testUnknownColumnsStayEmpty() throws Exception {
+        String csv = parse(sampleRecord(), "79.22,79.99,SOME_NAME,79.05.6", "TBCD_STRING,INTEGER,INTEGER,INTEGER");
+
+        assertEquals("12345,,," + NL, csv);
+    }
+
+    @Test
+    public void testHighTagNumber() throws Exception {
+        byte[] input = tlv(0xBF, 79, tlv(0x9F, 300, bytes(0x2A)), tlv(0x9F, 40, bytes(0x01)));
+
+        String csv = parse(input, "79.40,79.300", "INTEGER,INTEGER");
+
+        assertEquals("1,42" + NL, csv);
+    }
+
+    @Test
+    public void testUnreferencedSubtreeIsSkipped() throws Exception {
+        // 79.5 holds an APPLICATION tag the walker would reject, but no column refers to it
+        byte[] input = tlv(0xBF, 79,
+                tlv(0xA0 | 5, -1, tlv(0x60, -1, bytes(0x01, 0x02))),
+                tlv(0x80 | 6, -1, bytes(0x03)));
+
+        String csv = parse(input, "79.6", "INTEGER");
+
+        assertEquals("3" + NL, csv);
+    }
+
+    @Test
+    public void testMappedReaderAcrossWindows() throws Exception {
+        byte[] record = sampleRecord();
+        File file = folder.newFile("sample.ber");
+        Files.write(file.toPath(), record);
+        String schema = "REC_NO,79.22,79.19.2.*.1,79.19.2.*.2";
+        String dataTypes = "INTEGER,TBCD_STRING,INTEGER,INTEGER";
+
+        try (BERReader reader = new MappedBERReader(file, 7)) {
+            assertEquals(parse(record, schema, dataTypes), parse(reader, schema, dataTypes));
+        }
+    }
+
+    @Test
+    public void testParallelParseKeepsOrderAndRecordNumbers() throws Exception {
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        for (int i = 0; i < 50; i++) {
+            byte[] record = tlv(0xBF, 79,
+                    tlv(0x80 | 1, -1, bytes(i)),
+                    tlv(0xA0 | 2, -1, tlv(0x30, -1, tlv(0x81, -1, bytes(1))), tlv(0x30, -1, tlv(0x81, -1, bytes(2)))));
+            input.write(record, 0, record.length);
+        }
+        ASN1Schema schema = new ASN1Schema("REC_NO,SUB_SEQ,79.1,79.2.*.1", "INTEGER,INTEGER,INTEGER,INTEGER");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int recordCount = new ASN1ParallelParser(schema, 4, 40)
+                .parse(new ByteArrayBERReader(input.toByteArray(), 0, input.size()), out);
+
+        assertEquals(100, recordCount);
+        assertEquals(parse(input.toByteArray(), "REC_NO,SUB_SEQ,79.1,79.2.*.1", "INTEGER,INTEGER,INTEGER,INTEGER"),
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testIndefiniteLengthRecords() throws Exception {
+        byte[] record = indefinite(0xBF, 79,
+                tlv(0x80, 22, bytes(0x21, 0x43, 0xF5)),
+                indefinite(0xA0 | 19, -1,
+                        tlv(0xA0 | 2, -1,
+                                indefinite(0x30, -1, tlv(0x81, -1, bytes(0x01)), tlv(0x82, -1, bytes(0x0A))),
+                                tlv(0x30, -1, tlv(0x81, -1, bytes(0x02)), tlv(0x82, -1, bytes(0x14))))),
+                indefinite(0xA0 | 5, -1, indefinite(0xA0 | 6, -1, tlv(0x81, -1, bytes(0x00)))));
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        input.write(record, 0, record.length);
+        input.write(sampleRecord(), 0, sampleRecord().length);
+        input.write(record, 0, record.length);
+        String schema = "REC_NO,SUB_SEQ,79.22,79.19.2.*.1,79.19.2.*.2";
+        String dataTypes = "INTEGER,INTEGER,TBCD_STRING,INTEGER,INTEGER";
+
+        String csv = parse(input.toByteArray(), schema, dataTypes);
+
+        assertEquals("1,1,12345,1,10" + NL + "2,2,12345,2,20" + NL +
+                "3,1,12345,1,10" + NL + "4,2,12345,2,20" + NL +
+                "5,1,12345,1,10" + NL + "6,2,12345,2,20" + NL, csv);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ASN1ParallelParser(new ASN1Schema(schema, dataTypes), 2, 40)
+                .parse(new ByteArrayBERReader(input.toByteArray(), 0, input.size()), out);
+        assertEquals(csv, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testParserResetAfterFailedInput() throws Exception {
+        ASN1Schema schema = new ASN1Schema("REC_NO,79.22,79.19.2.*.2", "INTEGER,TBCD_STRING,INTEGER");
+        byte[] record = sampleRecord();
+        byte[] truncated = new byte[record.length + 10];
+        System.arraycopy(record, 0, truncated, 0, record.length);
+        System.arraycopy(record, 0, truncated, record.length, 10);
+
+        StreamBERReader reader = new StreamBERReader(new ByteArrayInputStream(truncated), 16);
+        ASN1CSVParser parser = new ASN1CSVParser(reader, schema);
+        try {
+            parser.parse(new ByteArrayOutputStream());
+            throw new AssertionError("Truncated input accepted.");
+        } catch (Exception expected) {
+        }
+
+        reader.reset(new ByteArrayInputStream(record));
+        parser.reset(reader);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(2, parser.parse(out));
+        assertEquals(parse(record, "REC_NO,79.22,79.19.2.*.2", "INTEGER,TBCD_STRING,INTEGER"),
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testParseMetrics() throws Exception {
+        byte[] record = sampleRecord();
+        ASN1Schema schema = new ASN1Schema("79.22,79.19.2.*.2", "TBCD_STRING,INTEGER");
+        ASN1CSVParser parser = new ASN1CSVParser(new ByteArrayBERReader(record, 0, record.length), schema);
+        parser.parse(new ByteArrayOutputStream());
+
+        ASN1ParseMetrics metrics = parser.getMetrics();
+        assertEquals(12, metrics.getTlvs());
+        assertEquals(3, metrics.getCapturedPrimitives());
+        assertEquals(2, metrics.getSkippedPrimitives());
+        assertEquals(2, metrics.getSkippedBlocks());
+        assertEquals(record.length, metrics.getBytesRead());
+        assertEquals(1, metrics.getTopLevelRecords());
+        assertEquals(2, metrics.getRecords());
+
+        ASN1ParseMetrics parallel = new ASN1ParseMetrics();
+        new ASN1ParallelParser(schema, 2, 40).parse(new ByteArrayBERReader(record, 0, record.length),
+                new ByteArrayOutputStream(), parallel);
+        assertEquals(metrics.getTlvs(), parallel.getTlvs());
+        assertEquals(metrics.getRecords(), parallel.getRecords());
+        assertEquals(metrics.getBytesRead(), parallel.getBytesRead());
+    }
+
+    @Test
+    public void testDuplicateColumnIsRejected() {
+        try {
+            new ASN1Schema("79.34.*.1,79.34.*[0].1", "INTEGER,INTEGER");
+        } catch (Exception e) {
+            assertTrue(e.getMessage().startsWith("Duplicate schema column"));
+            return;
+        }
+        throw new AssertionError("Duplicate column accepted.");
+    }
+
+    @Test
+    public void testTablesFromOneWalk() throws Exception {
+        byte[] input = new byte[sampleRecord().length * 2];
+        System.arraycopy(sampleRecord(), 0, input, 0, input.length / 2);
+        System.arraycopy(sampleRecord(), 0, input, input.length / 2, input.length / 2);
+        String[][] tables = {
+                {"REC_NO,79.22,79.19.2.*.2", "INTEGER,TBCD_STRING,INTEGER"},
+                {"79.22,79.34.*.1", "TBCD_STRING,INTEGER"},
+                {"SUB_SEQ,79.19.2.*.1,79.19.2.*.2", "INTEGER,INTEGER,INTEGER"}};
+
+        Map<String, ASN1Schema> schemas = new LinkedHashMap<>();
+        for (String[] table : tables)
+            schemas.put(table[0], new ASN1Schema(table[0], table[1]));
+        ByteArrayOutputStream[] outputs = new ByteArrayOutputStream[tables.length];
+        for (int i = 0; i < outputs.length; i++)
+            outputs[i] = new ByteArrayOutputStream();
+        ASN1CSVParser parser = new ASN1CSVParser(new StreamBERReader(new ByteArrayInputStream(input), 16),
+                new ASN1SchemaSet(schemas), JulComponentLog.DEFAULT);
+        assertEquals(4, parser.parse(outputs));
+
+        for (int i = 0; i < tables.length; i++)
+            assertEquals(parse(input, tables[i][0], tables[i][1]), new String(outputs[i].toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(2, parser.getRecordCount(1));
+        assertEquals(2, parser.getMetrics().getTopLevelRecords());
+    }
+
+    @Test
+    public void testInvalidRecordsAreSkipped() throws Exception {
+        byte[] walkFails = tlv(0xBF, 79, tlv(0x60 | 3, -1, bytes(0x01)));
+        byte[] writeFails = tlv(0xBF, 79, tlv(0x80, 22, bytes(0x21, 0x43, 0xF5)), tlv(0x80, 11, bytes(0x01, 0x02)));
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        for (byte[] record : new byte[][]{sampleRecord(), walkFails, writeFails, sampleRecord()})
+            input.write(record, 0, record.length);
+
+        List<String> invalid = new ArrayList<>();
+        ASN1CSVParser parser = new ASN1CSVParser(new StreamBERReader(new ByteArrayInputStream(input.toByteArray()), 16),
+                "REC_NO,79.22,79.19.2.*.2,79.11", "INTEGER,TBCD_STRING,INTEGER,IP_STRING");
+        parser.setInvalidRecordListener((offset, length, reason) -> invalid.add(offset + "+" + length + " " + reason.getMessage()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(4, parser.parse(out));
+
+        assertEquals("1,12345,10," + NL + "2,12345,20," + NL + "3,12345,10," + NL + "4,12345,20," + NL,
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+        int offset = sampleRecord().length;
+        assertEquals(2, invalid.size());
+        assertEquals(offset + "+" + walkFails.length + " Tag APPLICATION is not defined in this context.", invalid.get(0));
+        assertEquals((offset + walkFails.length) + "+" + writeFails.length + " Invalid IP_STRING data.", invalid.get(1));
+        assertEquals(2, parser.getMetrics().getInvalidRecords());
+        assertEquals(2, parser.getMetrics().getTopLevelRecords());
+        assertEquals(4, parser.getMetrics().getRecords());
+
+        // a truncated last record is reported with the bytes left and ends the parse
+        byte[] truncated = new byte[sampleRecord().length * 2 - 3];
+        System.arraycopy(sampleRecord(), 0, truncated, 0, offset);
+        System.arraycopy(sampleRecord(), 0, truncated, offset, offset - 3);
+        invalid.clear();
+        for (BERReader reader : new BERReader[]{new StreamBERReader(new ByteArrayInputStream(truncated), 16),
+                new ByteArrayBERReader(truncated, 0, truncated.length)}) {
+            parser = new ASN1CSVParser(reader, "REC_NO,79.22,79.19.2.*.2", "INTEGER,TBCD_STRING,INTEGER");
+            parser.setInvalidRecordListener((o, length, reason) -> invalid.add(o + "+" + length));
+            out.reset();
+            assertEquals(2, parser.parse(out));
+            assertEquals("1,12345,10" + NL + "2,12345,20" + NL, new String(out.toByteArray(), StandardCharsets.UTF_8));
+            assertEquals(offset + "+" + (offset - 3), invalid.get(invalid.size() - 1));
+            assertEquals(truncated.length, parser.getMetrics().getBytesRead());
+        }
+        assertEquals(2, invalid.size());
+    }
+
+    @Test
+    public void testCachedColumnsDecodeAlike() throws Exception {
+        byte[] input = new byte[sampleRecord().length * 2];
+        System.arraycopy(sampleRecord(), 0, input, 0, input.length / 2);
+        System.arraycopy(sampleRecord(), 0, input, input.length / 2, input.length / 2);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ASN1CSVParser parser = new ASN1CSVParser(new StreamBERReader(new ByteArrayInputStream(input), 16),
+                "79.22,79.19.2.*.2", "TBCD_STRING:CACHE,INTEGER:CACHE");
+        parser.parse(out);
+
+        assertEquals(parse(input, "79.22,79.19.2.*.2", "TBCD_STRING,INTEGER"),
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(5, parser.getMetrics().getCacheHits());
+        assertEquals(3, parser.getMetrics().getCacheMisses());
+    }
+
+    @Test
+    public void testGzipStreams() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = StreamCompression.GZIP.compress(compressed, 9)) {
+            out.write(sampleRecord());
+        }
+        BERReader reader = new StreamBERReader(
+                StreamCompression.GZIP.decompress(new ByteArrayInputStream(compressed.toByteArray())), 16);
+
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        try (OutputStream out = StreamCompression.GZIP.compress(csv, 0)) {
+            new ASN1CSVParser(reader, "79.22,79.19.2.*.2", "TBCD_STRING,INTEGER").parse(out);
+        }
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        try (InputStream in = StreamCompression.GZIP.decompress(new ByteArrayInputStream(csv.toByteArray()))) {
+            for (int b; (b = in.read()) >= 0; )
+                text.write(b);
+        }
+        assertEquals("12345,10" + NL + "12345,20" + NL, new String(text.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPipelinedStreams() throws Exception {
+        byte[] record = sampleRecord();
+        byte[] input = new byte[record.length * 50];
+        for (int i = 0; i < 50; i++)
+            System.arraycopy(record, 0, input, i * record.length, record.length);
+        String expected = parse(input, "REC_NO,79.22,79.19.2.*.2", "INTEGER,TBCD_STRING,INTEGER");
+
+        // blocks smaller than a record, so the stages wait for each other
+        BERReader reader = new StreamBERReader(new ReadAheadInputStream(new ByteArrayInputStream(input), 7, 2), 16);
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        try (OutputStream out = new WriteBehindOutputStream(csv, 5, 2)) {
+            new ASN1CSVParser(reader, "REC_NO,79.22,79.19.2.*.2", "INTEGER,TBCD_STRING,INTEGER").parse(out);
+        }
+        reader.close();
+        assertEquals(expected, new String(csv.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testPipelinedStreamErrors() throws Exception {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("read failed");
+            }
+        };
+        try (InputStream in = new ReadAheadInputStream(failing, 8, 2)) {
+            in.read();
+            fail();
+        } catch (IOException e) {
+            assertEquals("read failed", e.getMessage());
+        }
+
+        OutputStream failingOut = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("write failed");
+            }
+        };
+        try (OutputStream out = new WriteBehindOutputStream(failingOut, 4, 2)) {
+            out.write(new byte[64]);
+            fail();
+        } catch (IOException e) {
+            assertEquals("write failed", e.getMessage());
+        }
+    }
+
+    private static String parseFiltered(byte[] input, String filter) throws Exception {
+        ASN1Schema schema = new ASN1Schema("REC_NO,SUB_SEQ,MULTI_RECORD,79.22,79.19.2.*.2",
+                "INTEGER,INTEGER,INTEGER,TBCD_STRING,INTEGER");
+        ASN1CSVParser parser = new ASN1CSVParser(new StreamBERReader(new ByteArrayInputStream(input), 16), schema);
+        parser.setFilter(new ASN1Filter(filter, schema));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        parser.parse(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testFilterRows() throws Exception {
+        byte[] input = new byte[sampleRecord().length * 2];
+        System.arraycopy(sampleRecord(), 0, input, 0, input.length / 2);
+        System.arraycopy(sampleRecord(), 0, input, input.length / 2, input.length / 2);
+
+        assertEquals("1,2,1,12345,20" + NL + "2,2,1,12345,20" + NL,
+                parseFiltered(input, "79.22 startsWith '123' and 79.19.2.*.2 > 10"));
+        assertEquals("", parseFiltered(input, "79.22 = '54321' and 79.19.2.*.2 > 0"));
+        assertEquals("", parseFiltered(input, "79.19.2.*.2 >= 30"));
+    }
+
+    @Test
+    public void testFilterQuotedLiterals() throws Exception {
+        ASN1Schema schema = new ASN1Schema("79.1,79.2.*.1", "INTEGER,IA5_STRING");
+        String[] values = {"x and y", "x", "it's"};
+        String[][] filters = {
+                {"79.1 > 5 and 79.2.*.1 = 'x and y'", "7,\"x and y\""},
+                {"79.2.*.1='it''s'", "7,\"it's\""},
+                {"79.1>=5 AND 79.2.*.1 startsWith'x'", "7,\"x and y\"", "7,\"x\""},
+                {"79.1<5 and 79.2.*.1 != ''"}};
+        for (String[] filter : filters) {
+            ASN1RecordSet recordSet = new ASN1RecordSet(schema);
+            recordSet.setFilter(new ASN1Filter(filter[0], schema));
+            recordSet.populateCell(0, false, bytes(7));
+            for (String value : values)
+                recordSet.populateCell(1, true, value.getBytes(StandardCharsets.US_ASCII));
+            assertEquals(filter[0], filter.length - 1, recordSet.buildRecords(0));
+            assertArrayEquals(filter[0], Arrays.copyOfRange(filter, 1, filter.length), recordSet.getDecodedRows());
+        }
+    }
+
+    @Test
+    public void testInvalidFilter() throws Exception {
+        ASN1Schema schema = new ASN1Schema("REC_NO,79.22,79.19.2.*.2", "INTEGER,TBCD_STRING,INTEGER");
+        for (String filter : new String[]{"REC_NO > 1", "79.99 = 1", "79.19.2.*.2 = '10'", "79.22 = 123",
+                "79.19.2.*.2 startsWith 1", "79.22", "79.22 = 'open", "79.22 = '1' 79.19.2.*.2 > 0",
+                "79.22 = '1' and", "79.19.2.*.2 > 0and 79.22 = '1'"}) {
+            try {
+                new ASN1Filter(filter, schema);
+                fail(filter);
+            } catch (Exception e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testFilterNotTogetherWithSpilling() throws Exception {
+        ASN1Schema schema = new ASN1Schema("79.22,79.19.2.*.2", "TBCD_STRING,INTEGER");
+        ASN1Filter filter = new ASN1Filter("79.19.2.*.2 > 0", schema);
+        ASN1CSVParser parser = new ASN1CSVParser(new ByteArrayBERReader(new byte[0], 0, 0), schema);
+        parser.setSpillThreshold(1);
+        try {
+            parser.setFilter(filter);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        parser.setSpillThreshold(0);
+        parser.setFilter(filter);
+        try {
+            parser.setSpillThreshold(1);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        ASN1ParallelParser parallelParser = new ASN1ParallelParser(schema, 2);
+        parallelParser.setFilter(filter);
+        try {
+            parallelParser.setSpillThreshold(1);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.bonyansystem.processors.asn1;
+
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.bytes;
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.sampleRecord;
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.tlv;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ASN1ProcessorTest {
+    private static final String NL = System.lineSeparator();
+    private static final byte[] WALK_FAILS = tlv(0xBF, 79, tlv(0x60 | 3, -1, bytes(0x01)));
+    // 2 byte IP_STRING
+    private static final byte[] WRITE_FAILS = tlv(0xBF, 79, tlv(0x80, 22, bytes(0x21, 0x43, 0xF5)), tlv(0x80, 11, bytes(0x01, 0x02)));
+    // 9 byte INTEGER, fine as CSV text but not as INT64
+    private static final byte[] WIDE_INTEGER = tlv(0xBF, 79, tlv(0x80, 22, bytes(0x21, 0x43, 0xF5)),
+            tlv(0x80, 12, bytes(0x01, 0, 0, 0, 0, 0, 0, 0, 0)));
+
+    private TestRunner runner;
+
+    @Before
+    public void init() {
+        runner = TestRunners.newTestRunner(ASN1Processor.class);
+        runner.setProperty(ASN1Processor.CSV_SCHEMA, "REC_NO,79.22,79.19.2.*.2,79.11,79.12");
+        runner.setProperty(ASN1Processor.DATA_TYPES, "INTEGER,TBCD_STRING,INTEGER,IP_STRING,INTEGER");
+    }
+
+    private static byte[] concat(byte[]... records) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] record : records)
+            out.write(record, 0, record.length);
+        return out.toByteArray();
+    }
+
+    private void assertInvalid(MockFlowFile invalid, byte[] input, int offset, int length, String reason) {
+        invalid.assertAttributeEquals("InvalidOffset", Integer.toString(offset));
+        invalid.assertContentEquals(Arrays.copyOfRange(input, offset, offset + length));
+        assertTrue(invalid.getAttribute("InvalidReason"), invalid.getAttribute("InvalidReason").contains(reason));
+    }
+
+    @Test
+    public void testInvalidRecordsRoutedToInvalid() {
+        byte[] input = concat(sampleRecord(), WALK_FAILS, WRITE_FAILS, sampleRecord());
+        runner.setProperty(ASN1Processor.SKIP_INVALID_RECORDS, "true");
+        runner.enqueue(input);
+        runner.run();
+
+        runner.assertTransferCount(ASN1Processor.SUCCESS, 1);
+        runner.assertTransferCount(ASN1Processor.INVALID, 2);
+        runner.assertTransferCount(ASN1Processor.FAILURE, 0);
+        MockFlowFile csv = runner.getFlowFilesForRelationship(ASN1Processor.SUCCESS).get(0);
+        csv.assertAttributeEquals("RecordCount", "4");
+        csv.assertAttributeEquals("InvalidRecordCount", "2");
+        csv.assertAttributeEquals("TopLevelRecordCount", "2");
+        csv.assertContentEquals("1,12345,10,," + NL + "2,12345,20,," + NL + "3,12345,10,," + NL + "4,12345,20,," + NL);
+
+        int offset = sampleRecord().length;
+        List<MockFlowFile> invalid = runner.getFlowFilesForRelationship(ASN1Processor.INVALID);
+        assertInvalid(invalid.get(0), input, offset, WALK_FAILS.length, "Tag APPLICATION");
+        assertInvalid(invalid.get(1), input, offset + WALK_FAILS.length, WRITE_FAILS.length, "IP_STRING");
+    }
+
+    @Test
+    public void testTruncatedLastRecordRoutedToInvalid() {
+        byte[] record = sampleRecord();
+        byte[] input = Arrays.copyOf(concat(record, record), record.length * 2 - 3);
+        runner.setProperty(ASN1Processor.SKIP_INVALID_RECORDS, "true");
+        runner.enqueue(input);
+        runner.run();
+
+        runner.assertTransferCount(ASN1Processor.SUCCESS, 1);
+        runner.assertTransferCount(ASN1Processor.INVALID, 1);
+        runner.getFlowFilesForRelationship(ASN1Processor.SUCCESS).get(0).assertAttributeEquals("RecordCount", "2");
+        assertInvalid(runner.getFlowFilesForRelationship(ASN1Processor.INVALID).get(0), input,
+                record.length, record.length - 3, "Corrupted data block");
+    }
+
+    @Test
+    public void testParquetValuesCheckedBeforeWrite() {
+        byte[] input = concat(sampleRecord(), WRITE_FAILS, WIDE_INTEGER, sampleRecord());
+        runner.setProperty(ASN1Processor.OUTPUT_FORMAT, "Parquet");
+        runner.setProperty(ASN1Processor.SKIP_INVALID_RECORDS, "true");
+        runner.enqueue(input);
+        runner.run();
+
+        runner.assertTransferCount(ASN1Processor.SUCCESS, 1);
+        runner.assertTransferCount(ASN1Processor.INVALID, 2);
+        runner.assertTransferCount(ASN1Processor.FAILURE, 0);
+        runner.getFlowFilesForRelationship(ASN1Processor.SUCCESS).get(0).assertAttributeEquals("RecordCount", "4");
+
+        int offset = sampleRecord().length;
+        List<MockFlowFile> invalid = runner.getFlowFilesForRelationship(ASN1Processor.INVALID);
+        assertInvalid(invalid.get(0), input, offset, WRITE_FAILS.length, "IP_STRING");
+        assertInvalid(invalid.get(1), input, offset + WRITE_FAILS.length, WIDE_INTEGER.length, "INT64");
+        assertEquals(2, invalid.size());
+    }
+}
@@ -0,0 +1,56 @@
+package com.bonyansystem.processors.asn1;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.bytes;
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.indefinite;
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.sampleRecord;
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.tlv;
+import static org.junit.Assert.assertEquals;
+
+public class ASN1RecordIndexTest {
+
+    @Test
+    public void testOffsetsAndSplits() throws Exception {
+        byte[][] records = {sampleRecord(), tlv(0xBF, 79, tlv(0x80, 22, bytes(0x21))),
+                indefinite(0xBF, 79, tlv(0x80, 22, bytes(0x21, 0x43))), sampleRecord()};
+        ByteArrayOutputStream input = new ByteArrayOutputStream();
+        for (byte[] record : records)
+            input.write(record, 0, record.length);
+
+        ASN1RecordIndex index = ASN1RecordIndex.build(new StreamBERReader(new ByteArrayInputStream(input.toByteArray()), 16));
+        assertEquals(4, index.getRecordCount());
+        long offset = 0;
+        for (int i = 0; i < records.length; i++) {
+            assertEquals(offset, index.getOffset(i));
+            assertEquals(records[i].length, index.getLength(i, i + 1));
+            offset += records[i].length;
+        }
+
+        assertEquals(3, index.nextSplit(0, 3, 0));
+        assertEquals(4, index.nextSplit(3, 3, 0));
+        // a record larger than the limit is a split of its own
+        assertEquals(1, index.nextSplit(0, 0, 1));
+        assertEquals(3, index.nextSplit(1, 0, records[1].length + records[2].length));
+        assertEquals(2, index.nextSplit(1, 1, records[1].length + records[2].length));
+    }
+
+    @Test
+    public void testBytesBetweenRecordsLeftOut() {
+        // 10 byte records with 2 fill bytes after each
+        ASN1RecordIndex index = new ASN1RecordIndex();
+        for (int i = 0; i < 4; i++)
+            index.add(i * 12, i * 12 + 10);
+
+        assertEquals(10, index.getLength(0, 1));
+        assertEquals(22, index.getLength(0, 2));
+        assertEquals(10, index.getLength(3, 4));
+        assertEquals(2, index.nextSplit(0, 0, 22));
+        assertEquals(1, index.nextSplit(0, 0, 21));
+        assertEquals(4, index.nextSplit(1, 0, 34));
+        assertEquals(3, index.nextSplit(1, 2, 34));
+    }
+}
@@ -0,0 +1,64 @@
+package com.bonyansystem.processors.asn1;
+
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.bytes;
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.sampleRecord;
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.tlv;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ASN1RecordReaderTest {
+
+    private static ASN1RecordReader reader(byte[] input, ASN1Schema schema, String fieldNames) throws Exception {
+        RecordSchema recordSchema = ASN1RecordReader.createRecordSchema(schema, fieldNames);
+        return new ASN1RecordReader(new StreamBERReader(new ByteArrayInputStream(input), 16), schema, recordSchema);
+    }
+
+    @Test
+    public void testTypedValues() throws Exception {
+        ASN1Schema schema = new ASN1Schema("REC_NO,79.22,79.19.2.*.1,79.19.2.*.2,79.34.*.1",
+                "INTEGER,TBCD_STRING,INTEGER,INTEGER,OCTET_STRING");
+
+        try (ASN1RecordReader reader = reader(sampleRecord(), schema, null)) {
+            assertEquals(Arrays.asList("REC_NO", "f79_22", "f79_19_2_x_1", "f79_19_2_x_2", "f79_34_x_1"),
+                    reader.getSchema().getFieldNames());
+            assertEquals(RecordFieldType.LONG, reader.getSchema().getField(0).getDataType().getFieldType());
+
+            Record record = reader.nextRecord();
+            assertEquals(1L, record.getValue("REC_NO"));
+            assertEquals("12345", record.getValue("f79_22"));
+            assertEquals(10L, record.getValue("f79_19_2_x_2"));
+            assertEquals("07", record.getValue("f79_34_x_1"));
+
+            record = reader.nextRecord();
+            assertEquals(2L, record.getValue("REC_NO"));
+            assertEquals(20L, record.getValue("f79_19_2_x_2"));
+            assertNull(record.getValue("f79_34_x_1"));
+
+            assertNull(reader.nextRecord());
+        }
+    }
+
+    @Test
+    public void testFieldNamesAndUnquotedStrings() throws Exception {
+        byte[] input = tlv(0xBF, 79,
+                tlv(0x80 | 1, -1, "a\"b".getBytes()),
+                tlv(0x80 | 2, -1, bytes(0xFF)),
+                tlv(0x80 | 3, -1, bytes(0xFF, 0xFE)));
+        ASN1Schema schema = new ASN1Schema("79.1,79.2,79.3", "IA5_STRING,BOOLEAN,INTEGER");
+
+        try (ASN1RecordReader reader = reader(input, schema, "name, flag ,value")) {
+            Record record = reader.nextRecord();
+            assertEquals("a\"b", record.getValue("name"));
+            assertEquals(true, record.getValue("flag"));
+            assertEquals(-2L, record.getValue("value"));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.bonyansystem.processors.asn1;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.bytes;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ASN1RecordSetTest {
+    private static final String NL = System.lineSeparator();
+
+    @Test
+    public void testBuildRecordsAfterPurge() throws Exception {
+        ASN1RecordSet recordSet = new ASN1RecordSet(new ASN1Schema(
+                "REC_NO,SUB_SEQ,MULTI_RECORD,79.1,79.2.*.1,79.3.*[1].1",
+                "INTEGER,INTEGER,INTEGER,OCTET_STRING,INTEGER,INTEGER"));
+
+        recordSet.populateCell(3, false, bytes(0xAB));
+        recordSet.populateCell(4, true, bytes(1));
+        recordSet.populateCell(4, true, bytes(2));
+        recordSet.populateCell(4, true, bytes(3));
+        recordSet.populateCell(5, true, bytes(7));
+        recordSet.populateCell(5, true, bytes(8));
+        assertEquals(3, recordSet.buildRecords(10));
+        assertArrayEquals(new String[]{"11,1,1,AB,1,8", "12,2,1,AB,2,8", "13,3,1,AB,3,8"},
+                recordSet.getDecodedRows());
+
+        // rows and slab are reused, nothing of the previous record is left behind
+        recordSet.purge();
+        recordSet.populateCell(4, true, bytes(4));
+        assertEquals(1, recordSet.buildRecords(13));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        recordSet.writeRecords(out);
+        recordSet.flush();
+        assertEquals("14,1,0,,4," + NL, out.toString());
+    }
+
+    @Test
+    public void testCellsViewArrayInput() throws Exception {
+        ASN1RecordSet recordSet = new ASN1RecordSet(new ASN1Schema("79.1,79.2.*.1", "OCTET_STRING,OCTET_STRING"));
+        byte[] input = bytes(0x01, 0x02, 0x03, 0x04);
+        ByteArrayBERReader reader = new ByteArrayBERReader(input, 0, input.length);
+
+        reader.skip(1);
+        recordSet.populateCell(0, false, reader, 2);
+        recordSet.populateCell(1, true, bytes(0xEE));
+        recordSet.populateCell(1, true, reader, 1);
+        assertEquals(2, recordSet.buildRecords(0));
+
+        assertSame(input, recordSet.cellData(0, 0));
+        assertEquals(1, recordSet.cellOffset(0, 0));
+        assertSame(input, recordSet.cellData(1, 1));
+        assertEquals(3, recordSet.cellOffset(1, 1));
+        assertArrayEquals(new String[]{"0203,EE", "0203,04"}, recordSet.getDecodedRows());
+    }
+
+    @Test
+    public void testSpilledRowsWrittenInOrder() throws Exception {
+        try (ASN1RecordSet recordSet = new ASN1RecordSet(new ASN1Schema(
+                "SUB_SEQ,79.1,79.2.*.1,79.3.*[0].1",
+                "INTEGER,OCTET_STRING,INTEGER,INTEGER"))) {
+            recordSet.setSpillThreshold(2);
+            for (int record = 0; record < 2; record++) {
+                recordSet.purge();
+                for (int i = 1; i <= 5; i++)
+                    recordSet.populateCell(2, true, bytes(i));
+                // values for rows already spilled, and a master cell known only at the end
+                recordSet.populateCell(3, true, bytes(9));
+                recordSet.populateCell(3, true, bytes(8));
+                recordSet.populateCell(1, false, bytes(0xAB));
+                assertEquals(5, recordSet.buildRecords(0));
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                recordSet.writeRecords(out);
+                recordSet.flush();
+                assertEquals("1,AB,1,9" + NL + "2,AB,2,9" + NL + "3,AB,3,9" + NL + "4,AB,4,9" + NL + "5,AB,5,9" + NL,
+                        out.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testSpilledContainersStayBounded() throws Exception {
+        int rows = 1000;
+        try (ASN1RecordSet recordSet = new ASN1RecordSet(new ASN1Schema(
+                "SUB_SEQ,79.19.2.*.2,79.15.1.*.1", "INTEGER,INTEGER,INTEGER"))) {
+            recordSet.setSpillThreshold(2);
+            for (int record = 0; record < 2; record++) {
+                recordSet.purge();
+                // the second container only patches rows the first one has spilled
+                for (int column = 1; column <= 2; column++) {
+                    for (int i = 0; i < rows; i++) {
+                        recordSet.populateCell(column, true, bytes(i >> 8, i & 0xff, column));
+                        assertTrue(recordSet.getPatchCount() < 2 * 3);
+                        // 2 rows of 3 byte values kept in memory and 6 patches of them
+                        assertTrue(recordSet.getSlabSize() <= (2 + 6) * 3);
+                    }
+                }
+                assertEquals(rows, recordSet.buildRecords(0));
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                recordSet.writeRecords(out);
+                recordSet.flush();
+                StringBuilder expected = new StringBuilder();
+                for (int i = 0; i < rows; i++)
+                    expected.append(i + 1).append(',').append(i * 256 + 1).append(',').append(i * 256 + 2).append(NL);
+                assertEquals(expected.toString(), out.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testBinaryRows() throws Exception {
+        ASN1RecordSet recordSet = new ASN1RecordSet(new ASN1Schema(
+                "SUB_SEQ,79.1,79.2.*.1,79.3", "INTEGER,OCTET_STRING,INTEGER,OCTET_STRING"));
+        recordSet.setBinaryOutput(true);
+        recordSet.populateCell(1, false, bytes(0xAB));
+        recordSet.populateCell(2, true, bytes(0xFF));
+        recordSet.populateCell(2, true, bytes(0x01, 0x2C));
+        assertEquals(2, recordSet.buildRecords(0));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        recordSet.writeRecords(out);
+        recordSet.flush();
+        // row length, presence bitmap, zigzag varint SUB_SEQ, length and raw octets, zigzag varint -1 and 300
+        assertArrayEquals(bytes(0x05, 0x07, 0x02, 0x01, 0xAB, 0x01,
+                0x06, 0x07, 0x04, 0x01, 0xAB, 0xD8, 0x04), out.toByteArray());
+    }
+
+    @Test(expected = Exception.class)
+    public void testMasterCellSetTwice() throws Exception {
+        ASN1RecordSet recordSet = new ASN1RecordSet(new ASN1Schema("79.1", "OCTET_STRING"));
+        recordSet.populateCell(0, false, bytes(1));
+        recordSet.populateCell(0, false, bytes(2));
+    }
+}
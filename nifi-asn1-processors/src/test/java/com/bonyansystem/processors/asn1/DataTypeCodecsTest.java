@@ -0,0 +1,56 @@
+package com.bonyansystem.processors.asn1;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class DataTypeCodecsTest {
+
+    private static String encode(DataType dataType, byte... data) throws Exception {
+        ByteSink sink = new ByteSink(4);
+        dataType.getCodec().encode(data, 0, data.length, sink);
+        return new String(sink.toByteArray());
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] data = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+            data[i] = (byte) values[i];
+        return data;
+    }
+
+    @Test
+    public void testInteger() throws Exception {
+        assertEquals("0", encode(DataType.INTEGER, bytes(0)));
+        assertEquals("-1", encode(DataType.INTEGER, bytes(0xff)));
+        assertEquals("255", encode(DataType.INTEGER, bytes(0x00, 0xff)));
+        assertEquals(Long.toString(Long.MIN_VALUE), encode(DataType.INTEGER, bytes(0x80, 0, 0, 0, 0, 0, 0, 0)));
+        assertEquals(Long.toString(Long.MAX_VALUE), encode(DataType.INTEGER, bytes(0x7f, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff)));
+        byte[] big = bytes(0x81, 0, 0, 0, 0, 0, 0, 0, 1);
+        assertEquals(new BigInteger(big).toString(), encode(DataType.INTEGER, big));
+    }
+
+    @Test
+    public void testTBCD() throws Exception {
+        assertEquals("1234510", encode(DataType.TBCD_STRING, bytes(0x21, 0x43, 0xa5)));
+        assertEquals("98", encode(DataType.TBCD_STRING, bytes(0x89, 0xff)));
+        assertEquals("7", encode(DataType.TBCD_STRING, bytes(0xf7)));
+    }
+
+    @Test
+    public void testStrings() throws Exception {
+        assertEquals("00FFA5", encode(DataType.OCTET_STRING, bytes(0x00, 0xff, 0xa5)));
+        assertEquals("\"a\\\"b\\\\c\"", encode(DataType.IA5_STRING, "a\"b\\c".getBytes()));
+        assertEquals("10.0.255.1", encode(DataType.IP_STRING, bytes(10, 0, 255, 1)));
+        assertEquals("TRUE", encode(DataType.BOOLEAN, bytes(0xff)));
+        assertEquals("FALSE", encode(DataType.BOOLEAN, bytes(0x01)));
+    }
+
+    @Test
+    public void testIPv6() throws Exception {
+        byte[] data = bytes(0x20, 0x01, 0x0d, 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0xff, 0xff, 0xff, 0x01);
+        assertEquals("00000000003___y1", encode(DataType.IPV6_STRING, data));
+    }
+}
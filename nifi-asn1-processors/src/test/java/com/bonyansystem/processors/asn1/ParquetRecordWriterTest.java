@@ -0,0 +1,102 @@
+package com.bonyansystem.processors.asn1;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.bytes;
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.tlv;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ParquetRecordWriterTest {
+    private static final byte[] IP = bytes(10, 0, 0, 1);
+    private static final byte[] IPV6 = bytes(0x20, 0x01, 0x0d, 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0x01);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /*
+     * 79 { 22: TBCD 12345, 7: IPv4, 8: IPv6, 19 { 2 { SEQUENCE { 2: 10 }, SEQUENCE { 2: 20 } } } }
+     */
+    private static byte[] record() {
+        return tlv(0xBF, 79,
+                tlv(0x80, 22, bytes(0x21, 0x43, 0xF5)),
+                tlv(0x80 | 7, -1, IP),
+                tlv(0x80 | 8, -1, IPV6),
+                tlv(0xA0 | 19, -1,
+                        tlv(0xA0 | 2, -1,
+                                tlv(0x30, -1, tlv(0x82, -1, bytes(0x0A))),
+                                tlv(0x30, -1, tlv(0x82, -1, bytes(0x14))))));
+    }
+
+    @Test
+    public void testRowsReadBack() throws Exception {
+        byte[] input = new byte[record().length * 2];
+        System.arraycopy(record(), 0, input, 0, input.length / 2);
+        System.arraycopy(record(), 0, input, input.length / 2, input.length / 2);
+        ASN1Schema schema = new ASN1Schema("REC_NO,SUB_SEQ,MULTI_RECORD,79.22,79.7,79.8,79.19.2.*.2,79.9",
+                "INTEGER,INTEGER,INTEGER,TBCD_STRING,IP_STRING,IPV6_STRING,INTEGER,IA5_STRING");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ASN1CSVParser parser = new ASN1CSVParser(new ByteArrayBERReader(input, 0, input.length), schema);
+        try (ParquetRecordWriter writer = new ParquetRecordWriter(schema, out, CompressionCodecName.SNAPPY)) {
+            while (parser.nextRecord())
+                writer.write(parser.getRecordSet());
+        }
+        File file = folder.newFile("rows.parquet");
+        Files.write(file.toPath(), out.toByteArray());
+        Path path = new Path(file.toURI());
+
+        try (ParquetFileReader fileReader = ParquetFileReader.open(HadoopInputFile.fromPath(path, new Configuration()))) {
+            MessageType type = fileReader.getFooter().getFileMetaData().getSchema();
+            for (String field : new String[]{"REC_NO", "SUB_SEQ", "MULTI_RECORD", "f79_19_2_x_2"})
+                assertEquals(field, PrimitiveTypeName.INT64, type.getType(field).asPrimitiveType().getPrimitiveTypeName());
+            assertEquals(PrimitiveTypeName.BINARY, type.getType("f79_22").asPrimitiveType().getPrimitiveTypeName());
+            assertEquals(LogicalTypeAnnotation.stringType(), type.getType("f79_22").getLogicalTypeAnnotation());
+            assertEquals(PrimitiveTypeName.FIXED_LEN_BYTE_ARRAY, type.getType("f79_7").asPrimitiveType().getPrimitiveTypeName());
+            assertEquals(4, type.getType("f79_7").asPrimitiveType().getTypeLength());
+            assertEquals(PrimitiveTypeName.FIXED_LEN_BYTE_ARRAY, type.getType("f79_8").asPrimitiveType().getPrimitiveTypeName());
+            assertEquals(16, type.getType("f79_8").asPrimitiveType().getTypeLength());
+            assertNull(type.getType("f79_7").getLogicalTypeAnnotation());
+        }
+
+        List<Group> rows = new ArrayList<>();
+        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), path).build()) {
+            for (Group row; (row = reader.read()) != null; )
+                rows.add(row);
+        }
+        assertEquals(4, rows.size());
+        long[] values = {10, 20, 10, 20};
+        for (int i = 0; i < rows.size(); i++) {
+            Group row = rows.get(i);
+            assertEquals(i + 1, row.getLong("REC_NO", 0));
+            assertEquals(i % 2 + 1, row.getLong("SUB_SEQ", 0));
+            assertEquals(1, row.getLong("MULTI_RECORD", 0));
+            assertEquals("12345", row.getString("f79_22", 0));
+            assertArrayEquals(IP, row.getBinary("f79_7", 0).getBytes());
+            assertArrayEquals(IPV6, row.getBinary("f79_8", 0).getBytes());
+            assertEquals(values[i], row.getLong("f79_19_2_x_2", 0));
+            // empty cells are left out
+            assertEquals(0, row.getFieldRepetitionCount("f79_9"));
+        }
+    }
+}
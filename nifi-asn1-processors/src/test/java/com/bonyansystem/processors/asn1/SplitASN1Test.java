@@ -0,0 +1,106 @@
+package com.bonyansystem.processors.asn1;
+
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.bytes;
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.indefinite;
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.sampleRecord;
+import static com.bonyansystem.processors.asn1.ASN1CSVParserTest.tlv;
+import static org.junit.Assert.assertEquals;
+
+public class SplitASN1Test {
+    private TestRunner runner;
+    private byte[][] records;
+    private byte[] input;
+
+    @Before
+    public void init() {
+        runner = TestRunners.newTestRunner(SplitASN1.class);
+        records = new byte[][]{sampleRecord(), tlv(0xBF, 79, tlv(0x80, 22, bytes(0x21))),
+                indefinite(0xBF, 79, tlv(0x80, 22, bytes(0x21, 0x43))), sampleRecord(), sampleRecord()};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] record : records)
+            out.write(record, 0, record.length);
+        input = out.toByteArray();
+    }
+
+    private int offset(int record) {
+        int offset = 0;
+        for (int i = 0; i < record; i++)
+            offset += records[i].length;
+        return offset;
+    }
+
+    private void assertSplit(MockFlowFile split, int index, int count, int from, int to) {
+        split.assertAttributeEquals("fragment.index", Integer.toString(index));
+        split.assertAttributeEquals("fragment.count", Integer.toString(count));
+        split.assertAttributeEquals("segment.original.filename", "cdr.ber");
+        split.assertAttributeEquals("RecordCount", Integer.toString(to - from));
+        split.assertAttributeEquals("RecordOffset", Integer.toString(offset(from)));
+        split.assertContentEquals(Arrays.copyOfRange(input, offset(from), offset(to)));
+    }
+
+    @Test
+    public void testSplitByRecords() {
+        runner.setProperty(SplitASN1.RECORDS_PER_SPLIT, "2");
+        runner.enqueue(input, Collections.singletonMap("filename", "cdr.ber"));
+        runner.run();
+
+        runner.assertTransferCount(SplitASN1.SPLITS, 3);
+        runner.assertTransferCount(SplitASN1.ORIGINAL, 1);
+        runner.assertTransferCount(SplitASN1.FAILURE, 0);
+        runner.getFlowFilesForRelationship(SplitASN1.ORIGINAL).get(0).assertContentEquals(input);
+
+        List<MockFlowFile> splits = runner.getFlowFilesForRelationship(SplitASN1.SPLITS);
+        assertSplit(splits.get(0), 0, 3, 0, 2);
+        assertSplit(splits.get(1), 1, 3, 2, 4);
+        assertSplit(splits.get(2), 2, 3, 4, 5);
+        String fragmentId = splits.get(0).getAttribute("fragment.identifier");
+        for (MockFlowFile split : splits)
+            split.assertAttributeEquals("fragment.identifier", fragmentId);
+    }
+
+    @Test
+    public void testSplitByBytes() {
+        // the first two records fit, every later split only has room for one record
+        runner.setProperty(SplitASN1.BYTES_PER_SPLIT, (records[0].length + records[1].length) + " B");
+        runner.enqueue(input, Collections.singletonMap("filename", "cdr.ber"));
+        runner.run();
+
+        runner.assertTransferCount(SplitASN1.ORIGINAL, 1);
+        List<MockFlowFile> splits = runner.getFlowFilesForRelationship(SplitASN1.SPLITS);
+        assertEquals(4, splits.size());
+        assertSplit(splits.get(0), 0, 4, 0, 2);
+        assertSplit(splits.get(1), 1, 4, 2, 3);
+        assertSplit(splits.get(2), 2, 4, 3, 4);
+        assertSplit(splits.get(3), 3, 4, 4, 5);
+    }
+
+    @Test
+    public void testTruncatedHeaderFails() {
+        runner.setProperty(SplitASN1.RECORDS_PER_SPLIT, "2");
+        byte[] truncated = Arrays.copyOf(input, input.length + 1);
+        truncated[input.length] = (byte) 0xBF;
+        runner.enqueue(truncated);
+        runner.run();
+
+        runner.assertAllFlowFilesTransferred(SplitASN1.FAILURE, 1);
+        runner.getFlowFilesForRelationship(SplitASN1.FAILURE).get(0).assertContentEquals(truncated);
+    }
+
+    @Test
+    public void testOneLimitRequired() {
+        runner.assertNotValid();
+        runner.setProperty(SplitASN1.BYTES_PER_SPLIT, "1 MB");
+        runner.assertValid();
+    }
+}